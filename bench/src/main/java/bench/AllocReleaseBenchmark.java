@@ -0,0 +1,82 @@
+package bench;
+
+import memory.CompactionPolicy;
+import memory.Memory;
+import memory.Pointer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput and latency of an allocation paired with a release,
+ * in a memory that starts out half full and fragmented. Every operation
+ * releases one live allocation and replaces it with a new request, so the
+ * number of live allocations stays the same. A compaction budget of 0 keeps
+ * the full compaction when an allocation does not fit, anything else bounds
+ * it with {@link CompactionPolicy#incremental(int)}; the sample time shows
+ * how that moves the tail latency.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocReleaseBenchmark {
+    private static final int REQUESTS = 1 << 12;
+
+    @Param
+    private Allocator allocator;
+
+    @Param({"65536", "1048576"})
+    private int heapSize;
+
+    @Param
+    private Distribution distribution;
+
+    @Param({"0.0", "0.5", "0.9"})
+    private double fragmentation;
+
+    @Param({"0", "1024"})
+    private int compactionBudget;
+
+    private Memory memory;
+    private Pointer[] live;
+    private int[] sizes;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        Random random = new Random(42);
+        memory = allocator.create(heapSize);
+        // Failed allocations are part of the workload, and printing them would be timed with it
+        memory.setQuiet(true);
+        if (compactionBudget > 0) memory.setCompactionPolicy(CompactionPolicy.incremental(compactionBudget));
+        List<Pointer> survivors = Heaps.fragment(memory, heapSize, distribution, fragmentation, random);
+        live = survivors.toArray(new Pointer[Math.max(survivors.size(), 1)]);
+        sizes = distribution.sizes(random, REQUESTS);
+        next = 0;
+    }
+
+    @Benchmark
+    public Pointer allocRelease() {
+        int slot = next % live.length;
+        if (live[slot] != null) memory.release(live[slot]);
+        live[slot] = memory.alloc(sizes[next & (REQUESTS - 1)]);
+        next++;
+        return live[slot];
+    }
+}
@@ -0,0 +1,126 @@
+package bench;
+
+import memory.BestFit;
+import memory.Buddy;
+import memory.CompactionStats;
+import memory.ConcurrentMemory;
+import memory.FirstFit;
+import memory.GenerationalHeap;
+import memory.Memory;
+import memory.NextFit;
+import memory.SlabAllocator;
+import memory.TwoLevelSegregatedFit;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The allocators of the memory package that reuse released cells on their own.
+ */
+public enum Allocator {
+    FIRST_FIT {
+        @Override
+        Memory create(int size) {
+            return new FirstFit(size);
+        }
+
+        @Override
+        CompactionStats compact(Memory memory) {
+            return ((FirstFit) memory).compact();
+        }
+
+        @Override
+        CompactionStats compact(Memory memory, ForkJoinPool pool) {
+            return ((FirstFit) memory).compact(pool);
+        }
+    },
+    BEST_FIT {
+        @Override
+        Memory create(int size) {
+            return new BestFit(size);
+        }
+
+        @Override
+        CompactionStats compact(Memory memory) {
+            return ((BestFit) memory).compact();
+        }
+
+        @Override
+        CompactionStats compact(Memory memory, ForkJoinPool pool) {
+            return ((BestFit) memory).compact(pool);
+        }
+    },
+    NEXT_FIT {
+        @Override
+        Memory create(int size) {
+            return new NextFit(size);
+        }
+
+        @Override
+        CompactionStats compact(Memory memory) {
+            return ((NextFit) memory).compact();
+        }
+
+        @Override
+        CompactionStats compact(Memory memory, ForkJoinPool pool) {
+            return ((NextFit) memory).compact(pool);
+        }
+    },
+    BUDDY {
+        @Override
+        Memory create(int size) {
+            return new Buddy(size);
+        }
+    },
+    TLSF {
+        @Override
+        Memory create(int size) {
+            return new TwoLevelSegregatedFit(size);
+        }
+    },
+    SLAB {
+        @Override
+        Memory create(int size) {
+            return new SlabAllocator(size);
+        }
+    },
+    CONCURRENT {
+        @Override
+        Memory create(int size) {
+            return new ConcurrentMemory(size);
+        }
+    },
+    GENERATIONAL {
+        @Override
+        Memory create(int size) {
+            return new GenerationalHeap(size, size / 8);
+        }
+    };
+
+    /**
+     * Creates an empty memory.
+     * @param size The number of cells.
+     * @return The memory.
+     */
+    abstract Memory create(int size);
+
+    /**
+     * Compacts a memory created by this allocator.
+     * @param memory The memory.
+     * @return What the compaction did.
+     * @throws UnsupportedOperationException if the allocator does not compact.
+     */
+    CompactionStats compact(Memory memory) {
+        throw new UnsupportedOperationException(name() + " does not compact");
+    }
+
+    /**
+     * Compacts a memory created by this allocator on a fork-join pool.
+     * @param memory The memory.
+     * @param pool The pool that moves the cells.
+     * @return What the compaction did.
+     * @throws UnsupportedOperationException if the allocator does not compact.
+     */
+    CompactionStats compact(Memory memory, ForkJoinPool pool) {
+        throw new UnsupportedOperationException(name() + " does not compact");
+    }
+}
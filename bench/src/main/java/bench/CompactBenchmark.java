@@ -0,0 +1,73 @@
+package bench;
+
+import memory.CompactionStats;
+import memory.Memory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of compacting a half full, fragmented memory, both
+ * sequentially and on the common fork-join pool. Only the allocators with a
+ * public compaction take part; {@link Allocator#BUDDY} and the others never
+ * move their allocations. The memory is rebuilt before every compaction, so
+ * keep the heap large enough for the setup to stay negligible. With handles,
+ * a moved allocation updates a slot of the handle table instead of its
+ * pointer.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactBenchmark {
+    @Param({"FIRST_FIT", "BEST_FIT", "NEXT_FIT"})
+    private Allocator allocator;
+
+    @Param({"65536", "1048576"})
+    private int heapSize;
+
+    @Param
+    private Distribution distribution;
+
+    @Param({"0.1", "0.5", "0.9"})
+    private double fragmentation;
+
+    @Param({"false", "true"})
+    private boolean handles;
+
+    private final Random random = new Random(42);
+    private Memory memory;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        memory = allocator.create(heapSize);
+        memory.setQuiet(true);
+        memory.useHandles(handles);
+        Heaps.fragment(memory, heapSize, distribution, fragmentation, random);
+    }
+
+    @Benchmark
+    public CompactionStats compact() {
+        return allocator.compact(memory);
+    }
+
+    @Benchmark
+    public CompactionStats compactParallel() {
+        return allocator.compact(memory, ForkJoinPool.commonPool());
+    }
+}
@@ -0,0 +1,55 @@
+package bench;
+
+import java.util.Random;
+
+/**
+ * The sizes of the allocation requests in a benchmark.
+ */
+public enum Distribution {
+    /**
+     * 1 to 8 cells, like small objects.
+     */
+    SMALL {
+        @Override
+        int next(Random random) {
+            return 1 + random.nextInt(8);
+        }
+    },
+    /**
+     * 1 to 256 cells, all equally likely.
+     */
+    UNIFORM {
+        @Override
+        int next(Random random) {
+            return 1 + random.nextInt(256);
+        }
+    },
+    /**
+     * Mostly 1 to 16 cells, with one request in ten of 256 to 1024 cells.
+     */
+    BIMODAL {
+        @Override
+        int next(Random random) {
+            return random.nextInt(10) == 0 ? 256 + random.nextInt(769) : 1 + random.nextInt(16);
+        }
+    };
+
+    /**
+     * @param random The source of randomness.
+     * @return The size of the next request.
+     */
+    abstract int next(Random random);
+
+    /**
+     * @param random The source of randomness.
+     * @param count The number of requests, a power of two.
+     * @return The sizes of a number of requests.
+     */
+    int[] sizes(Random random, int count) {
+        int[] sizes = new int[count];
+        for (int i = 0; i < count; i++) {
+            sizes[i] = next(random);
+        }
+        return sizes;
+    }
+}
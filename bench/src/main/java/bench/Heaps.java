@@ -0,0 +1,51 @@
+package bench;
+
+import memory.Memory;
+import memory.Pointer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds memories in a known state for the benchmarks.
+ */
+final class Heaps {
+    /**
+     * The share of the cells that is allocated before any are released.
+     */
+    static final double OCCUPANCY = 0.5;
+
+    private Heaps() {
+    }
+
+    /**
+     * Allocates requests until half of the cells are taken, and then releases
+     * a share of the allocations picked at random, leaving holes between the rest.
+     * @param memory The empty memory.
+     * @param size The number of cells in the memory.
+     * @param distribution The sizes of the requests.
+     * @param fragmentation The share of the allocations to release, from 0 to 1.
+     * @param random The source of randomness.
+     * @return The allocations that are still live, in random order.
+     */
+    static List<Pointer> fragment(Memory memory, int size, Distribution distribution, double fragmentation, Random random) {
+        List<Pointer> live = new ArrayList<>();
+        long allocated = 0;
+        while (allocated < OCCUPANCY * size) {
+            int request = distribution.next(random);
+            Pointer p = memory.alloc(request);
+            if (p == null) break;
+            live.add(p);
+            allocated += request;
+        }
+
+        Collections.shuffle(live, random);
+        int released = (int) (live.size() * fragmentation);
+        for (Pointer p : live.subList(0, released)) {
+            memory.release(p);
+        }
+        return new ArrayList<>(live.subList(released, live.size()));
+    }
+}
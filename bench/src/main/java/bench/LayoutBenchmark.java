@@ -0,0 +1,88 @@
+package bench;
+
+import memory.LayoutSink;
+import memory.Memory;
+import memory.MemoryUtil.Status;
+import memory.Pointer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of printing the layout of a half full, fragmented memory,
+ * and of streaming it to a sink that only consumes the extents. The standard
+ * output is discarded while the benchmark runs, so only the cost of building
+ * and formatting the layout is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+    @Param
+    private Allocator allocator;
+
+    @Param({"65536"})
+    private int heapSize;
+
+    @Param
+    private Distribution distribution;
+
+    @Param({"0.0", "0.5", "0.9"})
+    private double fragmentation;
+
+    private Memory memory;
+    private PrintStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        memory = allocator.create(heapSize);
+        memory.setQuiet(true);
+        Heaps.fragment(memory, heapSize, distribution, fragmentation, new Random(42));
+        out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    @Benchmark
+    public void printLayout() {
+        memory.printLayout();
+    }
+
+    @Benchmark
+    public void exportLayout(Blackhole blackhole) {
+        memory.exportLayout(new LayoutSink() {
+            @Override
+            public void extent(long start, long length, Status status) {
+                blackhole.consume(length);
+            }
+
+            @Override
+            public void allocation(Pointer pointer, int size) {
+                blackhole.consume(size);
+            }
+        });
+    }
+}
@@ -0,0 +1,182 @@
+package experiments;
+
+import memory.Memory;
+import memory.Pointer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+/**
+ * A single simulation: an allocator, a heap size and a workload. The
+ * simulation allocates and releases at random, keeping the live allocations
+ * around 60% of the heap, and samples the external fragmentation a hundred
+ * times along the way.
+ * <p>
+ * External fragmentation is measured from the live allocations, as one minus
+ * the share of the free cells that are in the largest free run, so it is the
+ * same measure for every allocator. Cells that an allocator adds to a request,
+ * like the rounding of {@link memory.Buddy}, count as free.
+ */
+public class Experiment {
+    private static final double TARGET_OCCUPANCY = 0.6;
+    private static final int SAMPLES = 100;
+
+    private final String allocator;
+    private final IntFunction<Memory> factory;
+    private final int heapSize;
+    private final Workload workload;
+    private final long steps;
+    private final long seed;
+
+    /**
+     * Defines an experiment.
+     * @param allocator The name of the allocator, for the report.
+     * @param factory Creates an empty memory of the allocator, from a number of cells.
+     * @param heapSize The number of cells.
+     * @param workload The sizes of the requests.
+     * @param steps The number of allocations and releases to simulate.
+     * @param seed The seed of the randomness, so that runs can be repeated.
+     */
+    public Experiment(String allocator, IntFunction<Memory> factory, int heapSize, Workload workload, long steps, long seed) {
+        this.allocator = allocator;
+        this.factory = factory;
+        this.heapSize = heapSize;
+        this.workload = workload;
+        this.steps = steps;
+        this.seed = seed;
+    }
+
+    /**
+     * Defines every combination of allocators, heap sizes and workloads.
+     * @param allocators Factories of the allocators by name, in the order of the report.
+     * @param heapSizes The numbers of cells.
+     * @param workloads The workloads.
+     * @param steps The number of steps of every simulation.
+     * @param seed The seed of the randomness, the same for every simulation.
+     * @return The experiments.
+     */
+    public static List<Experiment> matrix(Map<String, IntFunction<Memory>> allocators, int[] heapSizes,
+                                          Workload[] workloads, long steps, long seed) {
+        List<Experiment> experiments = new ArrayList<>();
+        for (Map.Entry<String, IntFunction<Memory>> allocator : allocators.entrySet()) {
+            for (int heapSize : heapSizes) {
+                for (Workload workload : workloads) {
+                    experiments.add(new Experiment(allocator.getKey(), allocator.getValue(), heapSize, workload, steps, seed));
+                }
+            }
+        }
+        return experiments;
+    }
+
+    /**
+     * Runs the simulation on the calling thread.
+     * @return What the simulation measured.
+     */
+    public ExperimentResult run() {
+        Memory memory = factory.apply(heapSize);
+        // The failed allocations are counted in the result instead
+        memory.setQuiet(true);
+        Random random = new Random(seed);
+        List<Pointer> live = new ArrayList<>();
+        List<Integer> sizes = new ArrayList<>();
+        long liveCells = 0, allocations = 0, failed = 0, elapsed = 0;
+        double fragmentation = 0;
+        long sampleEvery = Math.max(steps / SAMPLES, 1);
+        int samples = 0;
+
+        long start = System.nanoTime();
+        for (long step = 0; step < steps; step++) {
+            double allocChance = liveCells < TARGET_OCCUPANCY * heapSize ? 0.7 : 0.3;
+            if (live.isEmpty() || random.nextDouble() < allocChance) {
+                int size = workload.size(step, steps, random);
+                Pointer p = memory.alloc(size);
+                allocations++;
+                if (p == null) {
+                    failed++;
+                } else {
+                    live.add(p);
+                    sizes.add(size);
+                    liveCells += size;
+                }
+            } else {
+                // Swap the victim with the last allocation, so removing it is cheap
+                int i = random.nextInt(live.size()), last = live.size() - 1;
+                memory.release(live.get(i));
+                liveCells -= sizes.get(i);
+                live.set(i, live.get(last));
+                sizes.set(i, sizes.get(last));
+                live.remove(last);
+                sizes.remove(last);
+            }
+
+            if ((step + 1) % sampleEvery == 0) {
+                elapsed += System.nanoTime() - start;
+                fragmentation += fragmentation(live, sizes);
+                samples++;
+                start = System.nanoTime();
+            }
+        }
+        elapsed += System.nanoTime() - start;
+
+        return new ExperimentResult(this, allocations, failed, samples == 0 ? 0 : fragmentation / samples,
+                fragmentation(live, sizes), (double) liveCells / heapSize, elapsed);
+    }
+
+    /**
+     * @return One minus the share of the free cells that are in the largest free run.
+     */
+    private double fragmentation(List<Pointer> live, List<Integer> sizes) {
+        long[] extents = new long[live.size()];
+        for (int i = 0; i < extents.length; i++) {
+            extents[i] = (long) live.get(i).pointsAt() << 32 | sizes.get(i);
+        }
+        Arrays.sort(extents);
+
+        long free = 0, largest = 0, end = 0;
+        for (long extent : extents) {
+            long address = extent >>> 32;
+            if (address > end) {
+                free += address - end;
+                largest = Math.max(largest, address - end);
+            }
+            end = Math.max(end, address + (int) extent);
+        }
+        if (heapSize > end) {
+            free += heapSize - end;
+            largest = Math.max(largest, heapSize - end);
+        }
+        return free == 0 ? 0 : 1 - (double) largest / free;
+    }
+
+    /**
+     * @return The name of the allocator.
+     */
+    public String getAllocator() {
+        return allocator;
+    }
+
+    /**
+     * @return The number of cells.
+     */
+    public int getHeapSize() {
+        return heapSize;
+    }
+
+    /**
+     * @return The workload.
+     */
+    public Workload getWorkload() {
+        return workload;
+    }
+
+    /**
+     * @return The number of steps of the simulation.
+     */
+    public long getSteps() {
+        return steps;
+    }
+}
@@ -0,0 +1,74 @@
+package experiments;
+
+/**
+ * What a single simulation of an {@link Experiment} measured.
+ */
+public class ExperimentResult {
+    private final Experiment experiment;
+    private final long allocations;
+    private final long failedAllocations;
+    private final double meanFragmentation;
+    private final double finalFragmentation;
+    private final double finalOccupancy;
+    private final long elapsedNanos;
+
+    ExperimentResult(Experiment experiment, long allocations, long failedAllocations, double meanFragmentation,
+                     double finalFragmentation, double finalOccupancy, long elapsedNanos) {
+        this.experiment = experiment;
+        this.allocations = allocations;
+        this.failedAllocations = failedAllocations;
+        this.meanFragmentation = meanFragmentation;
+        this.finalFragmentation = finalFragmentation;
+        this.finalOccupancy = finalOccupancy;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return The experiment that was simulated.
+     */
+    public Experiment getExperiment() {
+        return experiment;
+    }
+
+    /**
+     * @return The number of allocations that were requested.
+     */
+    public long getAllocations() {
+        return allocations;
+    }
+
+    /**
+     * @return The number of allocations that failed.
+     */
+    public long getFailedAllocations() {
+        return failedAllocations;
+    }
+
+    /**
+     * @return The external fragmentation averaged over the samples of the simulation, from 0 to 1.
+     */
+    public double getMeanFragmentation() {
+        return meanFragmentation;
+    }
+
+    /**
+     * @return The external fragmentation at the end of the simulation, from 0 to 1.
+     */
+    public double getFinalFragmentation() {
+        return finalFragmentation;
+    }
+
+    /**
+     * @return The share of the cells requested by live allocations at the end of the simulation.
+     */
+    public double getFinalOccupancy() {
+        return finalOccupancy;
+    }
+
+    /**
+     * @return The time spent allocating and releasing, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
@@ -0,0 +1,161 @@
+package experiments;
+
+import memory.BestFit;
+import memory.Buddy;
+import memory.FirstFit;
+import memory.GenerationalHeap;
+import memory.Memory;
+import memory.NextFit;
+import memory.SlabAllocator;
+import memory.TwoLevelSegregatedFit;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntFunction;
+
+/**
+ * Runs a matrix of experiments in parallel on a fork-join pool, one task per
+ * simulation, and writes the results as CSV or JSON. Every simulation has a
+ * memory of its own, so they share nothing but the pool.
+ */
+public class ExperimentRunner {
+    private static final String[] COLUMNS = {"allocator", "heapSize", "workload", "steps", "allocations",
+            "failedAllocations", "meanFragmentation", "finalFragmentation", "finalOccupancy", "elapsedNanos"};
+
+    private final int parallelism;
+
+    /**
+     * Initializes a runner that uses every available processor.
+     */
+    public ExperimentRunner() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Initializes a runner.
+     * @param parallelism The number of simulations to run at the same time.
+     */
+    public ExperimentRunner(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Runs the experiments and waits for all of them to finish.
+     * @param experiments The experiments.
+     * @return The results, in the order of the experiments.
+     */
+    public List<ExperimentResult> run(List<Experiment> experiments) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<ExperimentResult>> tasks = new ArrayList<>();
+            for (Experiment experiment : experiments) {
+                tasks.add(pool.submit(ForkJoinTask.adapt(experiment::run)));
+            }
+            List<ExperimentResult> results = new ArrayList<>();
+            for (ForkJoinTask<ExperimentResult> task : tasks) {
+                results.add(task.join());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Writes results as CSV, with a header row.
+     * @param results The results.
+     * @param out Where to write them.
+     */
+    public static void writeCsv(List<ExperimentResult> results, Writer out) {
+        PrintWriter writer = new PrintWriter(out);
+        writer.println(String.join(",", COLUMNS));
+        for (ExperimentResult result : results) {
+            writer.println(String.join(",", values(result)));
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes results as a JSON array of objects.
+     * @param results The results.
+     * @param out Where to write them.
+     */
+    public static void writeJson(List<ExperimentResult> results, Writer out) {
+        PrintWriter writer = new PrintWriter(out);
+        writer.println("[");
+        for (int i = 0; i < results.size(); i++) {
+            String[] values = values(results.get(i));
+            StringBuilder line = new StringBuilder("  {");
+            for (int c = 0; c < COLUMNS.length; c++) {
+                if (c > 0) line.append(", ");
+                line.append('"').append(COLUMNS[c]).append("\": ");
+                // The allocator and workload are the only text columns
+                if (c == 0 || c == 2) line.append('"').append(values[c].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+                else line.append(values[c]);
+            }
+            writer.println(line.append(i < results.size() - 1 ? "}," : "}"));
+        }
+        writer.println("]");
+        writer.flush();
+    }
+
+    private static String[] values(ExperimentResult result) {
+        Experiment experiment = result.getExperiment();
+        return new String[] {
+                experiment.getAllocator(),
+                Integer.toString(experiment.getHeapSize()),
+                experiment.getWorkload().name(),
+                Long.toString(experiment.getSteps()),
+                Long.toString(result.getAllocations()),
+                Long.toString(result.getFailedAllocations()),
+                String.format(Locale.ROOT, "%.4f", result.getMeanFragmentation()),
+                String.format(Locale.ROOT, "%.4f", result.getFinalFragmentation()),
+                String.format(Locale.ROOT, "%.4f", result.getFinalOccupancy()),
+                Long.toString(result.getElapsedNanos())
+        };
+    }
+
+    /**
+     * Runs every single-threaded allocator on heaps of 64K and 1M cells with
+     * every workload.
+     * @param args The number of steps per simulation, 1000000 by default, and
+     *             optionally a file name prefix: the report is written to
+     *             prefix.csv and prefix.json instead of printed as CSV.
+     * @throws IOException If the report can not be written.
+     */
+    public static void main(String[] args) throws IOException {
+        long steps = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+
+        Map<String, IntFunction<Memory>> allocators = new LinkedHashMap<>();
+        allocators.put("FirstFit", FirstFit::new);
+        allocators.put("BestFit", BestFit::new);
+        allocators.put("NextFit", NextFit::new);
+        allocators.put("Buddy", Buddy::new);
+        allocators.put("TwoLevelSegregatedFit", TwoLevelSegregatedFit::new);
+        allocators.put("SlabAllocator", SlabAllocator::new);
+        allocators.put("GenerationalHeap", size -> new GenerationalHeap(size, size / 8));
+        List<Experiment> experiments = Experiment.matrix(allocators, new int[] {1 << 16, 1 << 20}, Workload.values(), steps, 42);
+
+        List<ExperimentResult> results = new ExperimentRunner().run(experiments);
+
+        if (args.length > 1) {
+            try (Writer csv = Files.newBufferedWriter(Paths.get(args[1] + ".csv"));
+                 Writer json = Files.newBufferedWriter(Paths.get(args[1] + ".json"))) {
+                writeCsv(results, csv);
+                writeJson(results, json);
+            }
+        } else {
+            writeCsv(results, new PrintWriter(System.out));
+        }
+    }
+}
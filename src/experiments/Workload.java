@@ -0,0 +1,50 @@
+package experiments;
+
+import java.util.Random;
+
+/**
+ * A synthetic generator of allocation request sizes.
+ */
+public enum Workload {
+    /**
+     * 1 to 256 cells, all equally likely.
+     */
+    UNIFORM {
+        @Override
+        public int size(long step, long steps, Random random) {
+            return 1 + random.nextInt(256);
+        }
+    },
+    /**
+     * A Pareto distribution: most requests are a few cells, a few are very
+     * large, up to 4096 cells.
+     */
+    POWER_LAW {
+        @Override
+        public int size(long step, long steps, Random random) {
+            double size = Math.pow(1 - random.nextDouble(), -1 / 1.2);
+            return (int) Math.min(size, 4096);
+        }
+    },
+    /**
+     * Four phases that alternate between small requests of 1 to 16 cells and
+     * large requests of 64 to 1024 cells, so the memory is first filled with
+     * small holes and then asked for large blocks.
+     */
+    PHASED {
+        @Override
+        public int size(long step, long steps, Random random) {
+            boolean large = (step * 4 / Math.max(steps, 1)) % 2 == 1;
+            return large ? 64 + random.nextInt(961) : 1 + random.nextInt(16);
+        }
+    };
+
+    /**
+     * Returns the size of a request.
+     * @param step The number of the step in the simulation, from 0.
+     * @param steps The number of steps in the simulation.
+     * @param random The source of randomness.
+     * @return The number of cells to allocate, at least 1.
+     */
+    public abstract int size(long step, long steps, Random random);
+}
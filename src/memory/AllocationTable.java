@@ -0,0 +1,168 @@
+package memory;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the allocations in a memory, keyed by the address of their
+ * first cell. The table uses open addressing over primitive arrays, so finding
+ * the allocation behind a {@link Pointer} takes constant time and no sizes are
+ * boxed.
+ */
+public class AllocationTable {
+    private static final int EMPTY = -1;
+
+    private long[] addresses;
+    private int[] sizes;
+    private Pointer[] pointers;
+    private int count;
+
+    /**
+     * Initializes an empty table.
+     */
+    public AllocationTable() {
+        resize(16);
+    }
+
+    /**
+     * Adds an allocation, or replaces the one starting at the same address.
+     * @param p The pointer to the first cell.
+     * @param size The number of cells.
+     */
+    public void put(Pointer p, int size) {
+        int i = slot(p.pointsAt());
+        if (addresses[i] == EMPTY) {
+            if (2 * (count + 1) > addresses.length) {
+                resize(2 * addresses.length);
+                i = slot(p.pointsAt());
+            }
+            count++;
+        }
+        addresses[i] = p.pointsAt();
+        sizes[i] = size;
+        pointers[i] = p;
+    }
+
+    /**
+     * @param address The address of the first cell.
+     * @return The number of cells allocated at the address, or -1 if there is no allocation.
+     */
+    public int size(long address) {
+        int i = slot(address);
+        return addresses[i] == EMPTY ? -1 : sizes[i];
+    }
+
+    /**
+     * @param address The address of the first cell.
+     * @return The pointer stored for the allocation at the address, or null if there is no allocation.
+     */
+    public Pointer pointer(long address) {
+        return pointers[slot(address)];
+    }
+
+    /**
+     * Removes the allocation starting at the provided address.
+     * @param address The address of the first cell.
+     * @return true if there was an allocation at the address.
+     */
+    public boolean remove(long address) {
+        int i = slot(address);
+        if (addresses[i] == EMPTY) return false;
+
+        // Shift later entries of the probe sequence back, so lookups never need tombstones
+        int mask = addresses.length - 1;
+        for (int j = (i + 1) & mask; addresses[j] != EMPTY; j = (j + 1) & mask) {
+            int home = hash(addresses[j]);
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                addresses[i] = addresses[j];
+                sizes[i] = sizes[j];
+                pointers[i] = pointers[j];
+                i = j;
+            }
+        }
+        addresses[i] = EMPTY;
+        pointers[i] = null;
+        count--;
+        return true;
+    }
+
+    /**
+     * @return The number of allocations.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return The addresses of all allocations in ascending order.
+     */
+    public long[] addresses() {
+        long[] sorted = new long[count];
+        int n = 0;
+        for (long address : addresses) {
+            if (address != EMPTY) sorted[n++] = address;
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Copies the addresses of all allocations in ascending order into a
+     * buffer, so that repeated calls do not allocate a new array.
+     * @param buffer The buffer, used if it holds at least {@link #count()} addresses.
+     * @return The buffer, or a larger new array if it is too small. The
+     *         addresses are at the front.
+     */
+    public long[] addresses(long[] buffer) {
+        long[] sorted = buffer.length < count ? new long[Math.max(count, 2 * buffer.length)] : buffer;
+        int n = 0;
+        for (long address : addresses) {
+            if (address != EMPTY) sorted[n++] = address;
+        }
+        Arrays.sort(sorted, 0, n);
+        return sorted;
+    }
+
+    /**
+     * Removes all allocations.
+     */
+    public void clear() {
+        Arrays.fill(addresses, EMPTY);
+        Arrays.fill(pointers, null);
+        count = 0;
+    }
+
+    private int hash(long address) {
+        long h = address * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (addresses.length - 1);
+    }
+
+    /**
+     * Returns the slot holding the provided address, or the empty slot where it would be added.
+     */
+    private int slot(long address) {
+        int mask = addresses.length - 1;
+        int i = hash(address);
+        while (addresses[i] != EMPTY && addresses[i] != address) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void resize(int capacity) {
+        long[] oldAddresses = addresses;
+        int[] oldSizes = sizes;
+        Pointer[] oldPointers = pointers;
+        addresses = new long[capacity];
+        sizes = new int[capacity];
+        pointers = new Pointer[capacity];
+        Arrays.fill(addresses, EMPTY);
+        if (oldAddresses == null) return;
+        for (int j = 0; j < oldAddresses.length; j++) {
+            if (oldAddresses[j] == EMPTY) continue;
+            int i = slot(oldAddresses[j]);
+            addresses[i] = oldAddresses[j];
+            sizes[i] = oldSizes[j];
+            pointers[i] = oldPointers[j];
+        }
+    }
+}
@@ -3,7 +3,7 @@ package memory;
 import memory.MemoryUtil.NoFreeMemoryException;
 import memory.MemoryUtil.Status;
 
-import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This memory model allocates memory cells based on the best-fit method.
@@ -12,8 +12,9 @@ import java.util.TreeMap;
  * @since 1.0
  */
 public class BestFit extends Memory {
-    private TreeMap<Pointer, Integer> pointers;
-    private Status[] memoryStatus;
+    private AllocationTable pointers;
+    private StatusBitmap memoryStatus;
+    private FreeExtents freeExtents;
 
     /**
      * Initializes an instance of a best fit-based memory.
@@ -21,8 +22,20 @@ public class BestFit extends Memory {
      */
     public BestFit(int size) {
         super(size);
-        pointers = MemoryUtil.getTreeMap();
-        memoryStatus = MemoryUtil.getStatusArray(size);
+        pointers = new AllocationTable();
+        memoryStatus = new StatusBitmap(capacity());
+        freeExtents = new FreeExtents(capacity(), true);
+    }
+
+    /**
+     * Initializes an instance of a best fit-based memory.
+     * @param cells The cells of the memory, see {@link CellStore}.
+     */
+    public BestFit(CellStore cells) {
+        super(cells);
+        pointers = new AllocationTable();
+        memoryStatus = new StatusBitmap(capacity());
+        freeExtents = new FreeExtents(capacity(), true);
     }
 
     /**
@@ -32,59 +45,48 @@ public class BestFit extends Memory {
      */
     @Override
     public Pointer alloc(int size) {
-        // if there is no space left in the memory to allocate in the first loop it calls compact() and tries again.
+        long start = metrics.start();
+        // if there is no space left in the memory to allocate in the first loop it compacts as the policy allows and
+        // tries again, unless there are too few free cells in total for a compaction to help.
         for (int i = 0; i < 2; i++) {
             try {
-                int address = checkBestFit(size);
-                Pointer p = new Pointer(address, this);
+                long address = checkBestFit(size);
+                Pointer p = pointer(address);
                 pointers.put(p, size);
+                freeExtents.take(address, size);
                 MemoryUtil.updateMemoryStatus(memoryStatus, address, address + size, Status.ALLOCATED);
-                return p;
+                return allocated(p, size, freeExtents.searchLength(), start);
             } catch (NoFreeMemoryException e) {
-                if (i == 0) compact();
-                else System.err.println("No free memory");
+                if (i == 0 && freeExtents.free() >= size && compactionPolicy != CompactionPolicy.NEVER) makeRoom(size);
+                else {
+                    error("No free memory");
+                    break;
+                }
             }
         }
-        return null;
+        return allocated(null, size, freeExtents.searchLength(), start);
+    }
+
+    /**
+     * Compacts as much as the compaction policy allows, to make room for an allocation.
+     * @param size The number of cells to make room for.
+     */
+    private void makeRoom(int size) {
+        if (compactionPolicy == CompactionPolicy.FULL) compact();
+        else MemoryUtil.compactStep(this, pointers, memoryStatus, freeExtents, size, compactionPolicy.getBudget());
     }
 
     /**
      * Checks for a block that has the smallest overhead with the provided value.
-     * Where the size has the best fit in the memory.
+     * Where the size has the best fit in the memory. Ties go to the lowest address.
      * @param size The size of the block.
      * @return the starting address to the first free block.
      * @throws NoFreeMemoryException
      */
-    private int checkBestFit(int size) throws NoFreeMemoryException {
-        int address = -1;
-        int minSpace = Integer.MAX_VALUE;
-
-        int first = 0, last = 0;
-        Status s = memoryStatus[0];
-
-        for (int i = 1; i < memoryStatus.length; i++) {
-            if (memoryStatus[i].equals(s)) {
-                last++;
-            } else {
-                if (s.equals(Status.FREE) && ((last - first + 1) >= size)) {
-                    if ((last - first + 1) - size < minSpace) {
-                        address = first;
-                        minSpace = (last - first + 1) - size;
-                    }
-                }
-                last++;
-                s = memoryStatus[i];
-                first = last;
-            }
-        }
-        if (s.equals(Status.FREE) && ((last - first + 1) >= size)) {
-            if ((last - first + 1) - size < minSpace) {
-                address = first;
-            }
-        }
-
-        if (address >= 0) return address;
-        else throw new NoFreeMemoryException();
+    private long checkBestFit(int size) throws NoFreeMemoryException {
+        long address = size > 0 ? freeExtents.bestFit(size) : -1;
+        if (address < 0) throw new NoFreeMemoryException();
+        return address;
     }
 
     /**
@@ -93,29 +95,91 @@ public class BestFit extends Memory {
      */
     @Override
     public void release(Pointer p) {
-        try {
-            int point = p.pointsAt();
-            int size = pointers.get(p);
-            MemoryUtil.updateMemoryStatus(memoryStatus, point, point + size, Status.FREE);
-            pointers.remove(p);
-        } catch (NullPointerException npe) {
-            System.err.println("Pointer not in memory");
+        long point = p.pointsAt();
+        int size = pointers.size(point);
+        if (size < 0) {
+            error("Pointer not in memory");
+            return;
         }
+        MemoryUtil.updateMemoryStatus(memoryStatus, point, point + size, Status.FREE);
+        freeExtents.release(point, size);
+        pointers.pointer(point).releaseHandle();
+        pointers.remove(point);
+        released(point, size);
+    }
+
+    @Override
+    AllocationTable allocations() {
+        return pointers;
+    }
+
+    @Override
+    void restore(long address, int size) {
+        pointers.put(pointer(address), size);
+        freeExtents.take(address, size);
+        MemoryUtil.updateMemoryStatus(memoryStatus, address, address + size, Status.ALLOCATED);
     }
 
-    /**
-     * Prints a simple model of the memory, and the pointers.
-     */
     @Override
-    public void printLayout() {
-        MemoryUtil.printLayout(memoryStatus);
-        MemoryUtil.printPointerPos(pointers);
+    boolean canSlide() {
+        return true;
+    }
+
+    @Override
+    CompactionStats slide() {
+        return compact();
+    }
+
+    @Override
+    long freeCells() {
+        return freeExtents.free();
+    }
+
+    @Override
+    long largestFreeExtent() {
+        return freeExtents.largest();
+    }
+
+    @Override
+    int freeExtentCount() {
+        return freeExtents.count();
+    }
+
+    @Override
+    public void exportLayout(LayoutSink sink) {
+        MemoryUtil.exportLayout(memoryStatus, pointers, sink);
     }
 
     /**
      * Compacts the memory space.
+     * @return What the compaction did.
+     */
+    public CompactionStats compact() {
+        CompactionStats stats = MemoryUtil.compact(this, pointers, memoryStatus);
+        freeExtents.reset(stats.getFirstFree());
+        return stats;
+    }
+
+    /**
+     * Compacts the memory space like {@link #compact()}, moving the cells on a fork-join pool.
+     * @param pool The pool that moves the cells.
+     * @return What the compaction did.
+     */
+    public CompactionStats compact(ForkJoinPool pool) {
+        CompactionStats stats = MemoryUtil.compact(this, pointers, memoryStatus, pool);
+        freeExtents.reset(stats.getFirstFree());
+        return stats;
+    }
+
+    /**
+     * Compacts part of the memory, sliding the allocations after the lowest free extent
+     * down into it until about the provided number of cells have moved. Calling it
+     * between allocations spreads a compaction over time, and enough steps end in the
+     * layout of {@link #compact()}.
+     * @param budget The number of cells to move at most, except that at least one allocation is moved.
+     * @return What the step did.
      */
-    public void compact() {
-        MemoryUtil.compact(pointers, memoryStatus);
+    public CompactionStats compactStep(int budget) {
+        return MemoryUtil.compactStep(this, pointers, memoryStatus, freeExtents, Integer.MAX_VALUE, budget);
     }
 }
@@ -1,47 +1,75 @@
 package memory;
 
-import java.util.Collections;
-import java.util.EmptyStackException;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Stack;
+import memory.MemoryUtil.Status;
 
 /**
  * This memory model allocates memory cells based on the buddy method.
+ * <p>
+ * Free blocks are kept in one free list per power-of-two order, and the buddy
+ * of a block is found by flipping the bit of its order in the address. A
+ * request is served from the free block with the lowest address that is large
+ * enough, which is split in halves until it has the smallest order that fits.
+ * A memory whose size is not a power of two is covered by one top-level block
+ * per set bit of the size, largest first.
  *
  * @author "Johan Holmberg, Malmö university"
  * @since 1.0
  */
 public class Buddy extends Memory {
-    private class Block {
-        private Pointer pointer;
-        private int size;
-        private Block right;
-        private Block left;
-        private boolean empty;
-        private Stack<Pointer> relatives;
-
-        public Block(Pointer p, int size) {
-            this.pointer = p;
-            this.size = size;
-            empty = true;
-            relatives = new Stack<>();
+    /**
+     * The free blocks of one order, indexed by address >> order. Each level
+     * summarises which words of the level below are non-empty, so the block
+     * with the lowest address is found in a few steps without sorting.
+     */
+    private static class FreeList {
+        private final long[][] levels;
+        private int count;
+
+        private FreeList(int blocks) {
+            int depth = 1;
+            for (int n = blocks; n > 64; n = (n + 63) >>> 6) depth++;
+            levels = new long[depth][];
+            for (int l = 0, n = blocks; l < depth; l++, n = (n + 63) >>> 6) {
+                levels[l] = new long[(n + 63) >>> 6];
+            }
+        }
+
+        private boolean contains(int block) {
+            return (levels[0][block >>> 6] & (1L << block)) != 0;
+        }
+
+        private void add(int block) {
+            count++;
+            for (long[] level : levels) {
+                boolean wasEmpty = level[block >>> 6] == 0;
+                level[block >>> 6] |= 1L << block;
+                if (!wasEmpty) break;
+                block >>>= 6;
+            }
         }
 
-        public String toString() {
-            return String.format("%03d - %03d\t\t%s (Size: %d)", pointer.pointsAt(), pointer.pointsAt() + size - 1, empty ? "Free" : "Allocated", size);
+        private void remove(int block) {
+            count--;
+            for (long[] level : levels) {
+                level[block >>> 6] &= ~(1L << block);
+                if (level[block >>> 6] != 0) break;
+                block >>>= 6;
+            }
         }
 
-        public Stack<Pointer> cloneRelatives() {
-            Stack<Pointer> clonedRelatives = new Stack<>();
-            for (int i = relatives.size()-1; i >= 0; i--) {
-                clonedRelatives.push(relatives.get(i));
+        private int first() {
+            int block = 0;
+            for (int l = levels.length - 1; l >= 0; l--) {
+                long word = levels[l][block];
+                if (word == 0) return -1;
+                block = (block << 6) + Long.numberOfTrailingZeros(word);
             }
-            return clonedRelatives;
+            return block;
         }
     }
 
-    private final List<Block> blocks = new LinkedList<>();
+    private final FreeList[] free;
+    private final AllocationTable pointers = new AllocationTable();
 
     /**
      * Initializes an instance of a buddy-based memory.
@@ -50,7 +78,39 @@ public class Buddy extends Memory {
      */
     public Buddy(int size) {
         super(size);
-        blocks.add(new Block(new Pointer(this), size));
+        free = initFreeLists();
+    }
+
+    /**
+     * Initializes an instance of a buddy-based memory on top of existing cells.
+     *
+     * @param cells The cells of the memory, see {@link CellStore}.
+     * @throws IllegalArgumentException If there are more than {@link Integer#MAX_VALUE} cells.
+     */
+    public Buddy(CellStore cells) {
+        super(cells);
+        free = initFreeLists();
+    }
+
+    /**
+     * Creates the free lists, covering the memory with the largest aligned blocks that fit.
+     */
+    private FreeList[] initFreeLists() {
+        int capacity = intCapacity();
+        int maxOrder = 31 - Integer.numberOfLeadingZeros(capacity);
+        FreeList[] free = new FreeList[maxOrder + 1];
+        for (int order = 0; order <= maxOrder; order++) {
+            free[order] = new FreeList((capacity >>> order) + 1);
+        }
+
+        int address = 0;
+        for (int order = maxOrder; order >= 0; order--) {
+            if ((capacity & (1 << order)) != 0) {
+                free[order].add(address >>> order);
+                address += 1 << order;
+            }
+        }
+        return free;
     }
 
     /**
@@ -61,181 +121,166 @@ public class Buddy extends Memory {
      */
     @Override
     public Pointer alloc(int size) {
+        long start = metrics.start();
         // Return null if requested size is larger than the memory
-        if (size > this.cells.length)
-            return null;
-
-        Pointer p = null;
-
-        // Loop through the blocks
-        for (Block b : blocks) {
-
-            if (size == b.size && b.empty) {
-                b.empty = false;
-                p = b.pointer;
-                break;
-
-            } else if (b.empty && b.size >= size) {
-
-                Block currentBlock = b;
-
-                // Find minimum block size
-                while (size < currentBlock.size && size <= currentBlock.size / 2) {
-                    int halfSize = currentBlock.size / 2;
-
-                    // Split block into two new
-                    int startOfBlock = currentBlock.pointer.pointsAt();
-                    Pointer p1 = new Pointer(startOfBlock, this);
-                    Pointer p2 = new Pointer(p1.pointsAt() + halfSize, this);
-                    Block b1 = new Block(p1, halfSize);
-                    Block b2 = new Block(p2, currentBlock.size - b1.size);
-
-                    // Set the new block's relatives
-                    b1.relatives = currentBlock.cloneRelatives();
-                    b2.relatives = currentBlock.cloneRelatives();
-                    b1.relatives.push(currentBlock.pointer.clone());
-                    b2.relatives.push(currentBlock.pointer.clone());
-
-                    // Connect the old block's neighbours with the new blocks, and vice versa
-                    if (currentBlock.left != null) {
-                        currentBlock.left.right = b1;
-                        b1.left = currentBlock.left;
-                    }
-                    if (currentBlock.right != null) {
-                        currentBlock.right.left = b2;
-                        b2.right = currentBlock.right;
-                    }
-
-                    // Connect the new blocks with each other
-                    b1.right = b2;
-                    b2.left = b1;
-
-                    // Remove the old block and add the new
-                    blocks.remove(currentBlock);
-                    blocks.add(b1);
-                    blocks.add(b2);
-
-                    // Set b1 as current block
-                    currentBlock = b1;
-
-                    sort();
-
-                }
-
-                //
-                currentBlock.empty = false;
-                p = currentBlock.pointer;
-                break;
+        if (size > capacity() || size < 1)
+            return allocated(null, size, 0, start);
+
+        // Smallest order that fits the request
+        int order = size == 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+
+        // Find the free block with the lowest address among the orders that are large enough
+        int address = -1, blockOrder = -1;
+        for (int o = order; o < free.length; o++) {
+            int block = free[o].first();
+            if (block >= 0 && (address < 0 || block << o < address)) {
+                address = block << o;
+                blockOrder = o;
             }
-
         }
-        return p;
+        if (address < 0)
+            return allocated(null, size, free.length - order, start);
+
+        split(address, blockOrder, order);
+        if (listener != null && blockOrder > order)
+            listener.split(this, address, blockOrder - order);
+        Pointer p = pointer(address);
+        pointers.put(p, 1 << order);
+        return allocated(p, size, free.length - order, start);
     }
 
-    public void sort() {
-        Collections.sort(blocks, (b1, b2) -> {
-            int p1 = b1.pointer.pointsAt();
-            int p2 = b2.pointer.pointsAt();
-            return p1 < p2 ? -1 : 1;
-        });
+    /**
+     * Takes a free block and splits it until the block of the requested order
+     * at the provided address remains, putting every other half back on the
+     * free list of its order.
+     *
+     * @param address The address of the block to keep.
+     * @param blockOrder The order of the free block holding the address.
+     * @param order The order of the block to keep.
+     */
+    private void split(int address, int blockOrder, int order) {
+        free[blockOrder].remove(address >>> blockOrder);
+        while (blockOrder > order) {
+            blockOrder--;
+            free[blockOrder].add((address >>> blockOrder) ^ 1);
+        }
     }
 
     /**
-     * Releases a number of data cells and tries to merge empty buddy blocks
+     * Releases a number of data cells and merges the block with its buddies
+     * for as long as they are free.
      *
      * @param p The pointer to release.
      */
     @Override
     public void release(Pointer p) {
-        for (Block b : blocks) {
-            if (!b.pointer.equals(p))
-                continue;
-
-            b.empty = true;
-
-            tryMerge(b);
-
-            break;
+        long point = p.pointsAt();
+        int size = pointers.size(point);
+        if (size < 0)
+            return;
+
+        int address = (int) point;
+        pointers.pointer(address).releaseHandle();
+        pointers.remove(address);
+        int order = Integer.numberOfTrailingZeros(size);
+
+        // Merge with the buddy until it is taken or you're at the top
+        int block = address >>> order, merges = 0;
+        while (order < free.length - 1 && free[order].contains(block ^ 1)) {
+            free[order].remove(block ^ 1);
+            block >>>= 1;
+            order++;
+            merges++;
         }
+        free[order].add(block);
+        released(address, size);
+        if (listener != null && merges > 0)
+            listener.merged(this, block << order, merges);
     }
 
-    /**
-     * Recursively attempts to merge the provided block with its buddies
-     * @param b
-     */
-    public void tryMerge(Block b) {
-        Block both;
-        Pointer parentPointer;
-
-        do {
-            both = null;
-            parentPointer = null;
-
-            // Retrieve pointer of relative
-            try {
-                parentPointer = b.relatives.peek();
-            } catch (EmptyStackException ignored) {
-            }
-
-            // If relativesPointer is null, you're at the top
-            if (parentPointer != null) {
-
-                // Merge right
-                if (b.right != null && b.pointer.pointsAt() == parentPointer.pointsAt() && b.right.empty && b.right.size == b.size) {
-                    both = new Block(b.pointer, b.size + b.right.size);
-
-                    // Connect new block with neighbours
-                    both.right = b.right.right;
-                    both.left = b.left;
-
-                    // Remove closest relative and copy stack to merged block
-                    b.relatives.pop();
-                    both.relatives = b.cloneRelatives();
+    @Override
+    AllocationTable allocations() {
+        return pointers;
+    }
 
-                    // Remove old neighbour
-                    blocks.remove(b.right);
-                }
+    @Override
+    void restore(long address, int size) {
+        int order = Integer.numberOfTrailingZeros(size);
+        int blockOrder = order;
+        while (!free[blockOrder].contains((int) address >>> blockOrder)) blockOrder++;
+        split((int) address, blockOrder, order);
+        pointers.put(pointer(address), size);
+    }
 
-                // Merge left
-                else if (b.left != null && parentPointer.pointsAt() == b.left.pointer.pointsAt() && b.left.empty && b.left.size == b.size) {
-                    both = new Block(b.left.pointer, b.size + b.left.size);
+    @Override
+    long freeCells() {
+        long cells = 0;
+        for (int order = 0; order < free.length; order++) {
+            cells += (long) free[order].count << order;
+        }
+        return cells;
+    }
 
-                    // Connect new block with neighbours
-                    both.right = b.right;
-                    both.left = b.left.left;
+    @Override
+    long largestFreeExtent() {
+        for (int order = free.length - 1; order >= 0; order--) {
+            if (free[order].count > 0) return 1 << order;
+        }
+        return 0;
+    }
 
-                    // Remove closest relative and copy stack to merged block
-                    b.relatives.pop();
-                    both.relatives = b.cloneRelatives();
+    @Override
+    int freeExtentCount() {
+        int count = 0;
+        for (FreeList list : free) {
+            count += list.count;
+        }
+        return count;
+    }
 
-                    // Remove old neighbour
-                    blocks.remove(b.left);
-                }
+    /**
+     * Prints the memory layout, one line per block.
+     */
+    @Override
+    public void printLayout() {
+        exportLayout(new LayoutSink() {
+            @Override
+            public void extent(long start, long length, Status status) {
+                System.out.println(String.format("%03d - %03d\t\t%s (Size: %d)", start, start + length - 1,
+                        status == Status.FREE ? "Free" : "Allocated", length));
             }
 
-            if (both != null) {
-                // Connect neighbours with new block
-                Block leftNeighbour = both.left;
-                Block rightNeighbour = both.right;
-                if (leftNeighbour != null) leftNeighbour.right = both;
-                if (rightNeighbour != null) rightNeighbour.left = both;
-
-                // Add new block and remove the old
-                blocks.add(both);
-                blocks.remove(b);
-                b = both;
+            @Override
+            public void allocation(Pointer pointer, int size) {
             }
-
-            sort();
-
-            // Keep going until you can't merge any more
-        } while (both != null);
+        });
     }
 
     /**
-     * Prints the memory layout
+     * Streams the layout of the memory to a sink. Every free or allocated
+     * block is reported as an extent of its own, so neighbouring extents can
+     * have the same status.
+     * @param sink The sink.
      */
-    public void printLayout() {
-        blocks.forEach(System.out::println);
+    @Override
+    public void exportLayout(LayoutSink sink) {
+        sink.startExtents(capacity());
+        int address = 0;
+        while (address < capacity()) {
+            int size = pointers.size(address);
+            boolean empty = size < 0;
+            if (empty) {
+                int order = 0;
+                while (!free[order].contains(address >>> order)) order++;
+                size = 1 << order;
+            }
+            sink.extent(address, size, empty ? Status.FREE : Status.ALLOCATED);
+            address += size;
+        }
+        sink.startAllocations(pointers.count());
+        for (long a : pointers.addresses()) {
+            sink.allocation(pointers.pointer(a), pointers.size(a));
+        }
+        sink.end();
     }
 }
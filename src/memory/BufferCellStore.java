@@ -0,0 +1,164 @@
+package memory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * A {@link CellStore} backed by a sequence of int buffers. A single buffer
+ * holds less than 2^31 bytes, so the cells are split into chunks of 2^28 cells
+ * and a long address is split into a chunk and an index within it.
+ */
+class BufferCellStore extends CellStore {
+    static final int CHUNK_BITS = 28;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int MOVE_SIZE = 4096;
+    private static final ThreadLocal<int[]> MOVE_BUFFER = ThreadLocal.withInitial(() -> new int[MOVE_SIZE]);
+
+    private final IntBuffer[] chunks;
+    private final MappedByteBuffer[] mappings;
+    private final long size;
+    private final Path file;
+
+    /**
+     * @param chunks The buffers, all but the last holding exactly {@link #CHUNK_SIZE} cells.
+     * @param mappings The mapped buffers behind the chunks, or null if the store is not backed by a file.
+     * @param size The total number of cells.
+     * @param file The mapped file, or null.
+     */
+    private BufferCellStore(IntBuffer[] chunks, MappedByteBuffer[] mappings, long size, Path file) {
+        this.chunks = chunks;
+        this.mappings = mappings;
+        this.size = size;
+        this.file = file;
+    }
+
+    /**
+     * Creates a store backed by direct buffers outside of the Java heap.
+     * @param size The number of cells.
+     */
+    static BufferCellStore allocateDirect(long size) {
+        IntBuffer[] chunks = new IntBuffer[chunkCount(size)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect(chunkLength(size, i) * Integer.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+        }
+        return new BufferCellStore(chunks, null, size, null);
+    }
+
+    /**
+     * Creates a store backed by a memory-mapped file. The cells are read from
+     * and written to the page cache directly, and are not copied onto the Java
+     * heap. The mapping stays valid after the channel is closed.
+     * @param channel A channel to the file, opened for reading and writing.
+     * @param file The path of the file.
+     * @param size The number of cells, which the file must be large enough to hold.
+     */
+    static BufferCellStore map(FileChannel channel, Path file, long size) throws IOException {
+        IntBuffer[] chunks = new IntBuffer[chunkCount(size)];
+        MappedByteBuffer[] mappings = new MappedByteBuffer[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            long position = ((long) i << CHUNK_BITS) * Integer.BYTES;
+            mappings[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) chunkLength(size, i) * Integer.BYTES);
+            chunks[i] = mappings[i].order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return new BufferCellStore(chunks, mappings, size, file);
+    }
+
+    /**
+     * @return The mapped file, or null if the store is not backed by a file.
+     */
+    Path file() {
+        return file;
+    }
+
+    /**
+     * @return The number of chunks needed for the provided number of cells.
+     */
+    static int chunkCount(long size) {
+        return (int) ((size + CHUNK_MASK) >>> CHUNK_BITS);
+    }
+
+    /**
+     * @return The number of cells in the chunk with the provided index.
+     */
+    static int chunkLength(long size, int chunk) {
+        return (int) Math.min(CHUNK_SIZE, size - ((long) chunk << CHUNK_BITS));
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void flush() {
+        if (mappings == null) return;
+        for (MappedByteBuffer mapping : mappings) {
+            mapping.force();
+        }
+    }
+
+    @Override
+    public int get(long cell) {
+        return chunks[(int) (cell >>> CHUNK_BITS)].get((int) cell & CHUNK_MASK);
+    }
+
+    @Override
+    public void set(long cell, int value) {
+        chunks[(int) (cell >>> CHUNK_BITS)].put((int) cell & CHUNK_MASK, value);
+    }
+
+    @Override
+    public void read(long cell, int[] dst, int offset, int length) {
+        while (length > 0) {
+            int index = (int) cell & CHUNK_MASK;
+            int n = Math.min(length, CHUNK_SIZE - index);
+            chunks[(int) (cell >>> CHUNK_BITS)].get(index, dst, offset, n);
+            cell += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void write(long cell, int[] src, int offset, int length) {
+        while (length > 0) {
+            int index = (int) cell & CHUNK_MASK;
+            int n = Math.min(length, CHUNK_SIZE - index);
+            chunks[(int) (cell >>> CHUNK_BITS)].put(index, src, offset, n);
+            cell += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void move(long from, long to, long length) {
+        if (from == to || length <= 0) return;
+        int[] moveBuffer = MOVE_BUFFER.get();
+
+        // Copy in pieces, starting from the end that is not overwritten before it is read
+        if (to < from) {
+            for (long done = 0; done < length; ) {
+                int n = (int) Math.min(MOVE_SIZE, length - done);
+                read(from + done, moveBuffer, 0, n);
+                write(to + done, moveBuffer, 0, n);
+                done += n;
+            }
+        } else {
+            for (long left = length; left > 0; ) {
+                int n = (int) Math.min(MOVE_SIZE, left);
+                left -= n;
+                read(from + left, moveBuffer, 0, n);
+                write(to + left, moveBuffer, 0, n);
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package memory;
+
+import memory.MemoryUtil.Status;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This memory model allocates memory cells by bumping a pointer, the way a JVM
+ * allocates objects. Each thread carves a thread-local allocation buffer (TLAB)
+ * out of the shared cell space with a single compare-and-set, and allocates
+ * within it by moving a cursor, without any locks. Requests larger than a TLAB
+ * get a region of their own.
+ * <p>
+ * Released cells are not reused right away: a release only marks the
+ * allocation as dead. The dead allocations are reclaimed in bulk by
+ * {@link #compact()}, which slides the live ones down and resets the shared
+ * top. Like a garbage collection, {@link #compact()} and {@link #exportLayout(LayoutSink)}
+ * must run at a safepoint: no other thread may use the memory meanwhile, and
+ * the threads that did must have been synchronized with, for example by
+ * joining them.
+ */
+public class BumpAllocator extends Memory {
+    private static final int DEFAULT_TLAB_SIZE = 1024;
+
+    private static class Tlab {
+        private int cursor;
+        private int end;
+        private long epoch = -1;
+        private final AllocationTable pointers = new AllocationTable();
+    }
+
+    private final int tlabSize;
+    private final AtomicInteger top = new AtomicInteger();
+    // One bit per cell, set where a live allocation starts or a released one has not been reclaimed yet
+    private final AtomicLongArray starts;
+    private final AtomicLongArray released;
+    // The TLABs used since the last compaction, which empties them, so those of finished threads are dropped
+    private final Queue<Tlab> tlabs = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Tlab> tlab = ThreadLocal.withInitial(Tlab::new);
+    private long epoch;
+    private final StatusBitmap memoryStatus;
+    private AllocationTable survivors = new AllocationTable();
+
+    /**
+     * Initializes an instance of a bump pointer-based memory.
+     * @param size The number of cells.
+     */
+    public BumpAllocator(int size) {
+        this(CellStore.onHeap(Math.max(size, 1)), DEFAULT_TLAB_SIZE);
+    }
+
+    /**
+     * Initializes an instance of a bump pointer-based memory on top of existing cells.
+     * @param cells The cells of the memory, see {@link CellStore}.
+     * @param tlabSize The number of cells in a TLAB, rounded up to a multiple of 64.
+     * @throws IllegalArgumentException If there are more than {@link Integer#MAX_VALUE} cells.
+     */
+    public BumpAllocator(CellStore cells, int tlabSize) {
+        super(cells);
+        int capacity = intCapacity();
+        this.tlabSize = (int) roundUp(Math.max(tlabSize, 1));
+        starts = new AtomicLongArray((int) ((capacity + 63L) >>> 6));
+        released = new AtomicLongArray((int) ((capacity + 63L) >>> 6));
+        memoryStatus = new StatusBitmap(capacity);
+    }
+
+    /**
+     * Allocates a number of memory cells. May be called from any thread.
+     * @param size the number of cells to allocate.
+     * @return The address of the first cell, or null if the shared space is used up.
+     */
+    @Override
+    public Pointer alloc(int size) {
+        long start = metrics.start();
+        if (size < 1) return allocated(null, size, 0, start);
+
+        Tlab t = tlab.get();
+        if (t.epoch != epoch) {
+            t.epoch = epoch;
+            tlabs.add(t);
+        }
+        int address;
+        if (t.end - t.cursor >= size) {
+            address = t.cursor;
+        } else if (size > tlabSize) {
+            // Too large for a TLAB, carve a region of its own
+            address = carve(size, size);
+        } else {
+            // Retire the TLAB, its unused tail is reclaimed by the next compaction
+            address = carve(size, tlabSize);
+            if (address >= 0) t.end = (int) Math.min(address + (long) tlabSize, capacity());
+        }
+
+        if (address < 0) {
+            error("No free memory");
+            return allocated(null, size, 1, start);
+        }
+        if (size <= tlabSize) t.cursor = address + size;
+
+        // TLABs and regions start on a multiple of 64 cells, so no other thread sets bits in this word
+        starts.getAndAccumulate(address >>> 6, 1L << address, (word, bit) -> word | bit);
+        Pointer p = pointer(address);
+        t.pointers.put(p, size);
+        return allocated(p, size, 1, start);
+    }
+
+    /**
+     * Moves the shared top past a new region, which starts on a multiple of 64 cells.
+     * @param min The smallest acceptable number of cells.
+     * @param preferred The number of cells to carve if there is room.
+     * @return The start of the region, or -1 if fewer than min cells are left.
+     */
+    private int carve(int min, int preferred) {
+        while (true) {
+            int start = top.get();
+            int end = (int) Math.min(start + roundUp(preferred), capacity());
+            if (end - start < min) return -1;
+            if (top.compareAndSet(start, end)) return start;
+        }
+    }
+
+    private static long roundUp(long cells) {
+        return (cells + 63) & ~63L;
+    }
+
+    /**
+     * Marks an allocation as dead, so the next compaction reclaims it. May be
+     * called from any thread.
+     * @param p The pointer to release.
+     */
+    @Override
+    public void release(Pointer p) {
+        long point = p.pointsAt();
+        if (point < 0 || point >= capacity()) {
+            error("Pointer not in memory");
+            return;
+        }
+        int i = (int) (point >>> 6);
+        long bit = 1L << point;
+        long word;
+        do {
+            word = released.get(i);
+            if ((word & bit) != 0 || (starts.get(i) & bit) == 0) {
+                // Already released, never allocated, or inside an allocation
+                error("Pointer not in memory");
+                return;
+            }
+        } while (!released.compareAndSet(i, word, word | bit));
+        released(point, -1);
+    }
+
+    private boolean isReleased(long address) {
+        return (released.get((int) (address >>> 6)) & (1L << address)) != 0;
+    }
+
+    /**
+     * Reclaims every released allocation and the unused tails of all TLABs, by
+     * sliding the live allocations down to the start of the memory. Every
+     * thread gets a new TLAB on its next allocation. Must run at a safepoint.
+     * @return What the compaction did.
+     */
+    public CompactionStats compact() {
+        AllocationTable live = survivors;
+        for (long address : live.addresses()) {
+            if (!isReleased(address)) continue;
+            live.pointer(address).releaseHandle();
+            live.remove(address);
+        }
+        for (Tlab t : tlabs) {
+            for (long address : t.pointers.addresses()) {
+                if (isReleased(address)) t.pointers.pointer(address).releaseHandle();
+                else live.put(t.pointers.pointer(address), t.pointers.size(address));
+            }
+            t.pointers.clear();
+            t.cursor = 0;
+            t.end = 0;
+        }
+        // Every thread registers its TLAB again on its next allocation
+        tlabs.clear();
+        epoch++;
+        for (int i = 0; i < released.length(); i++) {
+            released.set(i, 0);
+        }
+
+        CompactionStats stats = MemoryUtil.compact(this, live, memoryStatus);
+        survivors = live;
+        for (int i = 0; i < starts.length(); i++) {
+            starts.set(i, 0);
+        }
+        for (long address : live.addresses()) {
+            int i = (int) (address >>> 6);
+            starts.set(i, starts.get(i) | 1L << address);
+        }
+        top.set((int) Math.min(roundUp(stats.getFirstFree()), capacity()));
+        return stats;
+    }
+
+    /**
+     * Copies the allocations that have not been released from one table to another.
+     */
+    private void collect(AllocationTable from, AllocationTable to) {
+        for (long address : from.addresses()) {
+            if (!isReleased(address)) to.put(from.pointer(address), from.size(address));
+        }
+    }
+
+    /**
+     * Only the cells above the shared top are free; released allocations and
+     * unused TLAB space are not reclaimed until the next compaction.
+     */
+    @Override
+    long freeCells() {
+        return capacity() - top.get();
+    }
+
+    @Override
+    long largestFreeExtent() {
+        return capacity() - top.get();
+    }
+
+    @Override
+    int freeExtentCount() {
+        return top.get() < capacity() ? 1 : 0;
+    }
+
+    /**
+     * Streams the layout of the memory to a sink. Released allocations and
+     * unused TLAB space show as free. Must run at a safepoint.
+     * @param sink The sink.
+     */
+    @Override
+    public void exportLayout(LayoutSink sink) {
+        AllocationTable live = new AllocationTable();
+        collect(survivors, live);
+        for (Tlab t : tlabs) collect(t.pointers, live);
+
+        MemoryUtil.updateMemoryStatus(memoryStatus, 0, capacity(), Status.FREE);
+        for (long address : live.addresses()) {
+            MemoryUtil.updateMemoryStatus(memoryStatus, address, address + live.size(address), Status.ALLOCATED);
+        }
+        MemoryUtil.exportLayout(memoryStatus, live, sink);
+    }
+}
@@ -0,0 +1,115 @@
+package memory;
+
+import java.util.Arrays;
+
+/**
+ * A {@link CellStore} that wraps another one and remembers which parts of the
+ * old space of a {@link GenerationalHeap} were written with a reference into
+ * the nursery. The cells are divided into cards of 64 cells, and a card is
+ * dirtied when one of its cells outside the nursery is set to an address
+ * inside it. A move dirties every card it writes to, since the moved cells
+ * may hold such references.
+ */
+class CardTable extends CellStore {
+    static final int CARD_SHIFT = 6;
+
+    private final CellStore cells;
+    private final byte[] cards;
+    private int nurseryStart;
+    private int nurseryEnd;
+
+    /**
+     * Initializes a table where every card is clean and there is no nursery yet.
+     * @param cells The store to wrap.
+     */
+    CardTable(CellStore cells) {
+        this.cells = cells;
+        cards = new byte[(int) ((cells.size() + (1 << CARD_SHIFT) - 1) >>> CARD_SHIFT)];
+    }
+
+    /**
+     * Sets the cells that hold the nursery.
+     * @param start The first cell.
+     * @param end The cell after the last one.
+     */
+    void setNursery(int start, int end) {
+        nurseryStart = start;
+        nurseryEnd = end;
+    }
+
+    /**
+     * @return The wrapped store, to write to without dirtying any card.
+     */
+    CellStore cells() {
+        return cells;
+    }
+
+    /**
+     * @return The number of cards.
+     */
+    int cards() {
+        return cards.length;
+    }
+
+    /**
+     * @param card The index of the card.
+     * @return true if a cell of the card may hold a reference into the nursery.
+     */
+    boolean isDirty(int card) {
+        return cards[card] != 0;
+    }
+
+    /**
+     * Cleans every card.
+     */
+    void clear() {
+        Arrays.fill(cards, (byte) 0);
+    }
+
+    @Override
+    public long size() {
+        return cells.size();
+    }
+
+    @Override
+    public void flush() {
+        cells.flush();
+    }
+
+    @Override
+    public int get(long cell) {
+        return cells.get(cell);
+    }
+
+    @Override
+    public void set(long cell, int value) {
+        cells.set(cell, value);
+        if (isYoung(value) && !isYoung(cell)) cards[(int) (cell >>> CARD_SHIFT)] = 1;
+    }
+
+    @Override
+    public void read(long cell, int[] dst, int offset, int length) {
+        cells.read(cell, dst, offset, length);
+    }
+
+    @Override
+    public void write(long cell, int[] src, int offset, int length) {
+        cells.write(cell, src, offset, length);
+        for (int i = 0; i < length; i++) {
+            if (isYoung(src[offset + i]) && !isYoung(cell + i)) cards[(int) ((cell + i) >>> CARD_SHIFT)] = 1;
+        }
+    }
+
+    @Override
+    public void move(long from, long to, long length) {
+        cells.move(from, to, length);
+        if (length <= 0) return;
+        for (long card = to >>> CARD_SHIFT; card <= (to + length - 1) >>> CARD_SHIFT; card++) {
+            cards[(int) card] = 1;
+        }
+    }
+
+    private boolean isYoung(long address) {
+        return address >= nurseryStart && address < nurseryEnd;
+    }
+}
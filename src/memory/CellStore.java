@@ -0,0 +1,82 @@
+package memory;
+
+/**
+ * The storage behind a {@link RawMemory}: a number of int cells addressed by
+ * long indices. Stores either live on the Java heap or outside of it, so a
+ * simulated memory does not have to fit in, or be collected as part of, the
+ * Java heap. A store mapped from a file is created through {@link HeapImage}.
+ */
+public abstract class CellStore {
+
+    /**
+     * Creates a store backed by an int array on the Java heap.
+     * @param size The number of cells.
+     * @return The store, with every cell set to 0.
+     */
+    public static CellStore onHeap(int size) {
+        return new HeapCellStore(size);
+    }
+
+    /**
+     * Creates a store backed by direct buffers outside of the Java heap. The
+     * store can hold more than {@link Integer#MAX_VALUE} cells, which
+     * {@link FirstFit}, {@link BestFit} and {@link NextFit} address in full.
+     * The other allocators only accept stores up to {@link Integer#MAX_VALUE} cells.
+     * @param size The number of cells.
+     * @return The store, with every cell set to 0.
+     */
+    public static CellStore offHeap(long size) {
+        return BufferCellStore.allocateDirect(size);
+    }
+
+    /**
+     * @return The number of cells.
+     */
+    public abstract long size();
+
+    /**
+     * Writes changed cells through to the storage behind the store. Stores
+     * that are not backed by a file have nothing to write.
+     */
+    public void flush() {
+    }
+
+    /**
+     * @param cell The address of the cell.
+     * @return The value of the cell.
+     */
+    public abstract int get(long cell);
+
+    /**
+     * @param cell The address of the cell.
+     * @param value The new value of the cell.
+     */
+    public abstract void set(long cell, int value);
+
+    /**
+     * Copies a number of cells into an array.
+     * @param cell The address of the first cell.
+     * @param dst The array to copy into.
+     * @param offset The first index in the array.
+     * @param length The number of cells.
+     */
+    public abstract void read(long cell, int[] dst, int offset, int length);
+
+    /**
+     * Copies a number of values from an array into the cells.
+     * @param cell The address of the first cell.
+     * @param src The array to copy from.
+     * @param offset The first index in the array.
+     * @param length The number of cells.
+     */
+    public abstract void write(long cell, int[] src, int offset, int length);
+
+    /**
+     * Copies a number of cells to another address within the store. The
+     * ranges may overlap. Moves between disjoint ranges may run concurrently.
+     * @param from The address of the first cell to copy.
+     * @param to The address to copy the first cell to.
+     * @param length The number of cells.
+     */
+    public abstract void move(long from, long to, long length);
+}
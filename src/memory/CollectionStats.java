@@ -0,0 +1,108 @@
+package memory;
+
+/**
+ * Describes one cycle of a {@link GarbageCollector}.
+ */
+public class CollectionStats {
+    private final long cycle;
+    private final long pauseNanos;
+    private final long mutatorNanos;
+    private final int liveBlocks;
+    private final long liveCells;
+    private final int freedBlocks;
+    private final long freedCells;
+    private final CompactionStats compaction;
+
+    /**
+     * @param cycle The number of the cycle, starting at 1.
+     * @param pauseNanos How long the cycle took, in nanoseconds.
+     * @param mutatorNanos How long the program ran between the previous cycle and this one, in nanoseconds.
+     * @param liveBlocks The number of allocations that were reachable.
+     * @param liveCells The number of cells in the reachable allocations.
+     * @param freedBlocks The number of allocations that were released.
+     * @param freedCells The number of cells in the released allocations.
+     * @param compaction What the compaction did, or null if the memory was not compacted.
+     */
+    public CollectionStats(long cycle, long pauseNanos, long mutatorNanos, int liveBlocks, long liveCells,
+                           int freedBlocks, long freedCells, CompactionStats compaction) {
+        this.cycle = cycle;
+        this.pauseNanos = pauseNanos;
+        this.mutatorNanos = mutatorNanos;
+        this.liveBlocks = liveBlocks;
+        this.liveCells = liveCells;
+        this.freedBlocks = freedBlocks;
+        this.freedCells = freedCells;
+        this.compaction = compaction;
+    }
+
+    /**
+     * @return The number of the cycle, starting at 1.
+     */
+    public long getCycle() {
+        return cycle;
+    }
+
+    /**
+     * @return How long the cycle took, in nanoseconds.
+     */
+    public long getPauseNanos() {
+        return pauseNanos;
+    }
+
+    /**
+     * @return How long the program ran between the previous cycle and this one, in nanoseconds.
+     */
+    public long getMutatorNanos() {
+        return mutatorNanos;
+    }
+
+    /**
+     * @return The share of the time since the previous cycle that was spent outside the collector, from 0 to 1.
+     */
+    public double getThroughput() {
+        long total = mutatorNanos + pauseNanos;
+        return total == 0 ? 1 : (double) mutatorNanos / total;
+    }
+
+    /**
+     * @return The number of allocations that were reachable.
+     */
+    public int getLiveBlocks() {
+        return liveBlocks;
+    }
+
+    /**
+     * @return The number of cells in the reachable allocations.
+     */
+    public long getLiveCells() {
+        return liveCells;
+    }
+
+    /**
+     * @return The number of allocations that were released.
+     */
+    public int getFreedBlocks() {
+        return freedBlocks;
+    }
+
+    /**
+     * @return The number of cells in the released allocations.
+     */
+    public long getFreedCells() {
+        return freedCells;
+    }
+
+    /**
+     * @return What the compaction did, or null if the memory was not compacted.
+     */
+    public CompactionStats getCompaction() {
+        return compaction;
+    }
+
+    @Override
+    public String toString() {
+        return "GC cycle " + cycle + ": pause " + pauseNanos / 1000 + " us, throughput " + String.format("%.3f", getThroughput())
+                + ", " + liveBlocks + " blocks (" + liveCells + " cells) live, " + freedBlocks + " blocks (" + freedCells + " cells) freed"
+                + (compaction == null ? "" : ", " + compaction.getBlocksRelocated() + " blocks relocated");
+    }
+}
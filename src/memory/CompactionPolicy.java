@@ -0,0 +1,58 @@
+package memory;
+
+/**
+ * Decides how much a memory compacts when an allocation finds no free extent
+ * large enough, although there are enough free cells in total. Set it with
+ * {@link Memory#setCompactionPolicy(CompactionPolicy)}. Only the memories
+ * that compact on their own, {@link FirstFit}, {@link BestFit} and
+ * {@link NextFit}, follow it.
+ */
+public class CompactionPolicy {
+    /**
+     * Moves every allocation that is not already in place, which opens a
+     * single free extent at the end of the memory. This is the default.
+     */
+    public static final CompactionPolicy FULL = new CompactionPolicy(Integer.MAX_VALUE);
+
+    /**
+     * Never compacts, so the allocation fails.
+     */
+    public static final CompactionPolicy NEVER = new CompactionPolicy(0);
+
+    private final int budget;
+
+    private CompactionPolicy(int budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Returns a policy that slides allocations down into the lowest free
+     * extent, one at a time, until a free extent is large enough for the
+     * allocation or the budget is spent. The allocation fails if there is
+     * still no room, and the next one carries on from where it stopped.
+     * This bounds the time of an allocation rather than the number of
+     * failed ones.
+     * @param budget The number of cells an allocation may move. An allocation
+     *               always moves at least one block, even a larger one.
+     * @return The policy.
+     * @throws IllegalArgumentException If the budget is not positive.
+     */
+    public static CompactionPolicy incremental(int budget) {
+        if (budget < 1) throw new IllegalArgumentException("The budget must be at least one cell");
+        return new CompactionPolicy(budget);
+    }
+
+    /**
+     * @return The number of cells an allocation may move, or {@link Integer#MAX_VALUE} for a full compaction.
+     */
+    public int getBudget() {
+        return budget;
+    }
+
+    @Override
+    public String toString() {
+        if (this == FULL) return "full compaction";
+        if (this == NEVER) return "no compaction";
+        return "incremental compaction of " + budget + " cells";
+    }
+}
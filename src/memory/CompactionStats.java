@@ -0,0 +1,47 @@
+package memory;
+
+/**
+ * Describes the work done by a compaction of a memory.
+ */
+public class CompactionStats {
+    private final int blocksRelocated;
+    private final long cellsMoved;
+    private final long firstFree;
+
+    /**
+     * @param blocksRelocated The number of allocations that were moved.
+     * @param cellsMoved The number of cells that were copied.
+     * @param firstFree The address of the first free cell after the compaction.
+     */
+    public CompactionStats(int blocksRelocated, long cellsMoved, long firstFree) {
+        this.blocksRelocated = blocksRelocated;
+        this.cellsMoved = cellsMoved;
+        this.firstFree = firstFree;
+    }
+
+    /**
+     * @return The number of allocations that were moved.
+     */
+    public int getBlocksRelocated() {
+        return blocksRelocated;
+    }
+
+    /**
+     * @return The number of cells that were copied.
+     */
+    public long getCellsMoved() {
+        return cellsMoved;
+    }
+
+    /**
+     * @return The address of the first free cell after the compaction.
+     */
+    public long getFirstFree() {
+        return firstFree;
+    }
+
+    @Override
+    public String toString() {
+        return "Compaction: " + blocksRelocated + " blocks relocated, " + cellsMoved + " cells moved, first free cell " + firstFree;
+    }
+}
@@ -0,0 +1,242 @@
+package memory;
+
+import memory.MemoryUtil.Status;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe memory model that splits the cells into arenas, each with its
+ * own lock, free extents and allocations. Every thread is assigned a home
+ * arena, so threads allocate and release without contending with each other.
+ * When the home arena is full, the allocation falls back to a shared region at
+ * the end of the memory, and then to the other arenas. Within an arena, cells
+ * are allocated based on the first-fit method.
+ * <p>
+ * Arenas start on multiples of 64 cells, so no two arenas ever update the same
+ * word of the status bitmap. The memory is not compacted.
+ */
+public class ConcurrentMemory extends Memory {
+    private static class Arena {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int start;
+        private final int size;
+        private final FreeExtents freeExtents;
+        private final AllocationTable pointers = new AllocationTable();
+
+        private Arena(int start, int size) {
+            this.start = start;
+            this.size = size;
+            freeExtents = new FreeExtents(size);
+        }
+    }
+
+    private final Arena[] arenas;
+    private final Arena shared;
+    private final int arenaSize;
+    private final StatusBitmap memoryStatus;
+    private final AtomicInteger nextArena = new AtomicInteger();
+    private final ThreadLocal<Arena> home;
+
+    /**
+     * Initializes an instance of a concurrent memory with one arena per available processor.
+     * @param size The number of cells.
+     */
+    public ConcurrentMemory(int size) {
+        this(size, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Initializes an instance of a concurrent memory.
+     * @param size The number of cells.
+     * @param arenas The number of per-thread arenas.
+     */
+    public ConcurrentMemory(int size, int arenas) {
+        this(CellStore.onHeap(Math.max(size, 1)), arenas);
+    }
+
+    /**
+     * Initializes an instance of a concurrent memory on top of existing cells.
+     * A quarter of the cells make up the shared region, and the rest is split
+     * evenly between the arenas.
+     * @param cells The cells of the memory, see {@link CellStore}.
+     * @param arenas The number of per-thread arenas.
+     * @throws IllegalArgumentException If there are more than {@link Integer#MAX_VALUE} cells.
+     */
+    public ConcurrentMemory(CellStore cells, int arenas) {
+        super(cells);
+        int size = intCapacity();
+        memoryStatus = new StatusBitmap(size);
+
+        arenaSize = arenas < 1 ? 0 : ((size - size / 4) / arenas) & ~63;
+        this.arenas = new Arena[arenaSize == 0 ? 0 : arenas];
+        for (int i = 0; i < this.arenas.length; i++) {
+            this.arenas[i] = new Arena(i * arenaSize, arenaSize);
+        }
+        int sharedStart = this.arenas.length * arenaSize;
+        shared = new Arena(sharedStart, size - sharedStart);
+
+        home = ThreadLocal.withInitial(() -> this.arenas.length == 0 ? shared
+                : this.arenas[Math.floorMod(nextArena.getAndIncrement(), this.arenas.length)]);
+    }
+
+    /**
+     * Allocates a number of memory cells. May be called from any thread.
+     * @param size the number of cells to allocate.
+     * @return The address of the first cell, or null if no arena has room.
+     */
+    @Override
+    public Pointer alloc(int size) {
+        long start = metrics.start();
+        if (size < 1) return allocated(null, size, 0, start);
+
+        Arena first = home.get();
+        int searched = 1;
+        Pointer p = alloc(first, size);
+        if (p == null && first != shared) {
+            searched++;
+            p = alloc(shared, size);
+        }
+        for (int i = 0; p == null && i < arenas.length; i++) {
+            if (arenas[i] != first) {
+                searched++;
+                p = alloc(arenas[i], size);
+            }
+        }
+
+        if (p == null) error("No free memory");
+        return allocated(p, size, searched, start);
+    }
+
+    private Pointer alloc(Arena arena, int size) {
+        arena.lock.lock();
+        try {
+            long offset = arena.freeExtents.firstFit(size);
+            if (offset < 0) return null;
+            arena.freeExtents.take(offset, size);
+
+            long address = arena.start + offset;
+            Pointer p = pointer(address);
+            arena.pointers.put(p, size);
+            MemoryUtil.updateMemoryStatus(memoryStatus, address, address + size, Status.ALLOCATED);
+            return p;
+        } finally {
+            arena.lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a number of data cells. May be called from any thread, not only
+     * the one that allocated them.
+     * @param p The pointer to release.
+     */
+    @Override
+    public void release(Pointer p) {
+        long point = p.pointsAt();
+        Arena arena = arenaOf(point);
+        if (arena == null) {
+            error("Pointer not in memory");
+            return;
+        }
+
+        arena.lock.lock();
+        try {
+            int size = arena.pointers.size(point);
+            if (size < 0) {
+                error("Pointer not in memory");
+                return;
+            }
+            MemoryUtil.updateMemoryStatus(memoryStatus, point, point + size, Status.FREE);
+            arena.freeExtents.release(point - arena.start, size);
+            arena.pointers.pointer(point).releaseHandle();
+            arena.pointers.remove(point);
+            released(point, size);
+        } finally {
+            arena.lock.unlock();
+        }
+    }
+
+    private Arena arenaOf(long address) {
+        if (address < 0 || address >= capacity()) return null;
+        if (address >= shared.start) return shared;
+        return arenas[(int) address / arenaSize];
+    }
+
+    /**
+     * The arenas are locked one at a time, so the total may mix moments.
+     */
+    @Override
+    long freeCells() {
+        long cells = 0;
+        for (Arena arena : all()) {
+            arena.lock.lock();
+            try {
+                cells += arena.freeExtents.free();
+            } finally {
+                arena.lock.unlock();
+            }
+        }
+        return cells;
+    }
+
+    @Override
+    long largestFreeExtent() {
+        long largest = 0;
+        for (Arena arena : all()) {
+            arena.lock.lock();
+            try {
+                largest = Math.max(largest, arena.freeExtents.largest());
+            } finally {
+                arena.lock.unlock();
+            }
+        }
+        return largest;
+    }
+
+    @Override
+    int freeExtentCount() {
+        int count = 0;
+        for (Arena arena : all()) {
+            arena.lock.lock();
+            try {
+                count += arena.freeExtents.count();
+            } finally {
+                arena.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    private Arena[] all() {
+        Arena[] all = Arrays.copyOf(arenas, arenas.length + 1);
+        all[arenas.length] = shared;
+        return all;
+    }
+
+    /**
+     * Streams the layout of the memory to a sink. All arenas are locked while
+     * exporting.
+     * @param sink The sink.
+     */
+    @Override
+    public void exportLayout(LayoutSink sink) {
+        for (Arena arena : arenas) arena.lock.lock();
+        shared.lock.lock();
+        try {
+            AllocationTable pointers = new AllocationTable();
+            for (Arena arena : arenas) copy(arena, pointers);
+            copy(shared, pointers);
+            MemoryUtil.exportLayout(memoryStatus, pointers, sink);
+        } finally {
+            shared.lock.unlock();
+            for (Arena arena : arenas) arena.lock.unlock();
+        }
+    }
+
+    private static void copy(Arena arena, AllocationTable pointers) {
+        for (long address : arena.pointers.addresses()) {
+            pointers.put(arena.pointers.pointer(address), arena.pointers.size(address));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package memory;
+
+import memory.MemoryUtil.Status;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+
+/**
+ * Writes a layout as CSV, with one row per extent and one per allocation:
+ * <pre>
+ * kind,start,size,status
+ * extent,0,10,ALLOCATED
+ * extent,10,90,FREE
+ * allocation,0,10,ALLOCATED
+ * </pre>
+ * The data of the allocations is not written.
+ */
+public class CsvLayoutSink implements LayoutSink {
+    private final PrintWriter out;
+
+    /**
+     * Initializes a sink.
+     * @param out The writer to write to, which is flushed but not closed at the end.
+     */
+    public CsvLayoutSink(Writer out) {
+        this.out = new PrintWriter(out);
+    }
+
+    @Override
+    public void startExtents(long capacity) {
+        out.println("kind,start,size,status");
+    }
+
+    @Override
+    public void extent(long start, long length, Status status) {
+        out.println("extent," + start + "," + length + "," + status);
+    }
+
+    @Override
+    public void allocation(Pointer pointer, int size) {
+        out.println("allocation," + pointer.pointsAt() + "," + size + "," + Status.ALLOCATED);
+    }
+
+    @Override
+    public void end() {
+        out.flush();
+    }
+}
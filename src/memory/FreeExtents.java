@@ -0,0 +1,316 @@
+package memory;
+
+import java.util.Random;
+
+/**
+ * An address-ordered index of the free extents in a memory. Neighbouring
+ * extents are coalesced when cells are released, so the index always holds the
+ * maximal free runs of the memory. Every node also knows the largest extent in
+ * its subtree, which lets the first fit be found in logarithmic time instead of
+ * scanning the memory cell by cell.
+ * <p>
+ * The extents can also be indexed by size, ordered by length and then by
+ * address, which turns the best fit into a single ceiling lookup.
+ */
+class FreeExtents {
+    private static class Node {
+        // Nodes are ordered by key and then by start
+        private final long key;
+        private final long start;
+        private final long length;
+        private long max;
+        private final int priority;
+        private Node left;
+        private Node right;
+
+        private Node(long key, long start, long length, int priority) {
+            this.key = key;
+            this.start = start;
+            this.length = length;
+            this.max = length;
+            this.priority = priority;
+        }
+    }
+
+    private final Random random = new Random(0);
+    private final long capacity;
+    private final boolean bySize;
+    private Node byAddress;
+    private Node sizes;
+    private int count;
+    private long free;
+    private int searched;
+
+    /**
+     * Initializes an index where all cells are free.
+     * @param capacity The number of cells in the memory.
+     */
+    FreeExtents(long capacity) {
+        this(capacity, false);
+    }
+
+    /**
+     * Initializes an index where all cells are free.
+     * @param capacity The number of cells in the memory.
+     * @param bySize true if the extents should also be indexed by size, see {@link #bestFit(int)}.
+     */
+    FreeExtents(long capacity, boolean bySize) {
+        this.capacity = capacity;
+        this.bySize = bySize;
+        reset(0);
+    }
+
+    /**
+     * Finds the free extent with the lowest address that can hold the provided number of cells.
+     * @param size The number of cells.
+     * @return The start of the extent, or -1 if no extent is large enough.
+     */
+    long firstFit(int size) {
+        Node n = byAddress;
+        if (n == null || n.max < size) return -1;
+        while (true) {
+            searched++;
+            if (n.left != null && n.left.max >= size) n = n.left;
+            else if (n.length >= size) return n.start;
+            else n = n.right;
+        }
+    }
+
+    /**
+     * Finds the first free range at or after the provided address that can hold the
+     * provided number of cells, without wrapping around. If the address is inside a
+     * free extent, the range starts at the address itself.
+     * @param from The address to start searching at.
+     * @param size The number of cells.
+     * @return The start of the range, or -1 if there is none after the address.
+     */
+    long nextFit(long from, int size) {
+        Node n = floor(from);
+        searched++;
+        if (n != null && n.start + n.length - from >= size) return from;
+        n = firstAfter(byAddress, from, size);
+        return n == null ? -1 : n.start;
+    }
+
+    /**
+     * Finds the extent with the lowest address above the provided one that can hold
+     * the provided number of cells, skipping every subtree without a large enough extent.
+     */
+    private Node firstAfter(Node n, long from, int size) {
+        if (n == null || n.max < size) return null;
+        searched++;
+        if (n.start <= from) return firstAfter(n.right, from, size);
+        Node left = firstAfter(n.left, from, size);
+        if (left != null) return left;
+        if (n.length >= size) return n;
+        return firstAfter(n.right, from, size);
+    }
+
+    /**
+     * Finds the smallest free extent that can hold the provided number of cells. Among
+     * extents of the same length, the one with the lowest address is chosen.
+     * @param size The number of cells.
+     * @return The start of the extent, or -1 if no extent is large enough.
+     */
+    long bestFit(int size) {
+        Node n = sizes, best = null;
+        while (n != null) {
+            searched++;
+            if (n.key >= size) {
+                best = n;
+                n = n.left;
+            } else {
+                n = n.right;
+            }
+        }
+        return best == null ? -1 : best.start;
+    }
+
+    /**
+     * @return The start of the free extent with the lowest address, or -1 if the memory is full.
+     */
+    long lowest() {
+        Node n = byAddress;
+        if (n == null) return -1;
+        while (n.left != null) n = n.left;
+        return n.start;
+    }
+
+    /**
+     * @param start The start of a free extent.
+     * @return The number of cells in the extent.
+     */
+    long length(long start) {
+        return find(start).length;
+    }
+
+    /**
+     * Removes a range of cells from the free extent that holds them.
+     * @param start The first cell, inside a free extent.
+     * @param size The number of cells to take, all within the same extent.
+     */
+    void take(long start, int size) {
+        Node n = remove(floor(start).start);
+        free -= size;
+        if (n.start < start) insert(n.start, start - n.start);
+        if (n.start + n.length > start + size) insert(start + size, n.start + n.length - start - size);
+    }
+
+    /**
+     * Returns a number of cells to the index, merging them with adjacent free extents.
+     * @param start The first cell.
+     * @param size The number of cells.
+     */
+    void release(long start, int size) {
+        free += size;
+        long length = size;
+        Node next = find(start + size);
+        if (next != null) {
+            remove(next.start);
+            length += next.length;
+        }
+        Node previous = floor(start - 1);
+        if (previous != null && previous.start + previous.length == start) {
+            remove(previous.start);
+            start = previous.start;
+            length += previous.length;
+        }
+        insert(start, length);
+    }
+
+    /**
+     * Clears the index, leaving a single free extent from the provided address to the end of the memory.
+     * @param start The first free cell.
+     */
+    void reset(long start) {
+        byAddress = null;
+        sizes = null;
+        count = 0;
+        free = 0;
+        if (start < capacity) {
+            insert(start, capacity - start);
+            free = capacity - start;
+        }
+    }
+
+    /**
+     * Returns how many extents the searches looked at since the last call, as
+     * a measure of how hard it was to find room for an allocation.
+     * @return The number of extents.
+     */
+    int searchLength() {
+        int length = searched;
+        searched = 0;
+        return length;
+    }
+
+    /**
+     * @return The total number of free cells.
+     */
+    long free() {
+        return free;
+    }
+
+    /**
+     * @return The number of free extents.
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * @return The length of the largest free extent, or 0 if the memory is full.
+     */
+    long largest() {
+        return byAddress == null ? 0 : byAddress.max;
+    }
+
+    private Node find(long start) {
+        Node n = byAddress;
+        while (n != null && n.start != start) {
+            n = start < n.start ? n.left : n.right;
+        }
+        return n;
+    }
+
+    private Node floor(long start) {
+        Node n = byAddress, floor = null;
+        while (n != null) {
+            if (n.start <= start) {
+                floor = n;
+                n = n.right;
+            } else {
+                n = n.left;
+            }
+        }
+        return floor;
+    }
+
+    private void insert(long start, long length) {
+        byAddress = insert(byAddress, new Node(start, start, length, random.nextInt()));
+        if (bySize) sizes = insert(sizes, new Node(length, start, length, random.nextInt()));
+        count++;
+    }
+
+    private Node remove(long start) {
+        Node[] lower = split(byAddress, start, start);
+        Node[] upper = split(lower[1], start, start + 1);
+        byAddress = merge(lower[0], upper[1]);
+        Node n = upper[0];
+        if (bySize) sizes = remove(sizes, n.length, n.start);
+        count--;
+        return n;
+    }
+
+    private static Node insert(Node root, Node n) {
+        Node[] parts = split(root, n.key, n.start);
+        return merge(merge(parts[0], n), parts[1]);
+    }
+
+    private static Node remove(Node root, long key, long start) {
+        Node[] lower = split(root, key, start);
+        Node[] upper = split(lower[1], key, start + 1);
+        return merge(lower[0], upper[1]);
+    }
+
+    /**
+     * Splits a subtree into the nodes that order below the provided key and start, and the rest.
+     */
+    private static Node[] split(Node n, long key, long start) {
+        if (n == null) return new Node[2];
+        Node[] parts;
+        if (n.key < key || n.key == key && n.start < start) {
+            parts = split(n.right, key, start);
+            n.right = parts[0];
+            parts[0] = n;
+        } else {
+            parts = split(n.left, key, start);
+            n.left = parts[1];
+            parts[1] = n;
+        }
+        update(n);
+        return parts;
+    }
+
+    /**
+     * Merges two subtrees, where every key in the first is below every key in the second.
+     */
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+
+    private static void update(Node n) {
+        n.max = n.length;
+        if (n.left != null && n.left.max > n.max) n.max = n.left.max;
+        if (n.right != null && n.right.max > n.max) n.max = n.right.max;
+    }
+}
@@ -0,0 +1,234 @@
+package memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A stop-the-world mark-sweep-compact garbage collector for a {@link Memory}.
+ * <p>
+ * The collector starts from a set of root pointers and treats every cell of a
+ * reachable allocation whose value is an address inside another allocation
+ * as a reference to it, like a conservative collector. Reachable allocations
+ * are marked in a bitmap with an explicit mark stack. These and the sorted
+ * addresses of the allocations are kept between cycles, so marking does not
+ * recurse and the arrays are only replaced when the heap grows. Unreachable allocations are released back to the
+ * allocator.
+ * <p>
+ * A collector can also compact the memory after sweeping. Every cell that
+ * looks like a reference into a moved allocation is then rewritten to point
+ * to its new address, as are the roots, so compaction should only be used on
+ * heaps where such cells really hold references.
+ * <p>
+ * The memory must not be used while a cycle runs.
+ */
+public class GarbageCollector {
+    private final Memory memory;
+    private final boolean compact;
+    private final List<Pointer> roots = new ArrayList<>();
+    private long[] addresses = new long[0];
+    private int[] sizes = new int[0];
+    private Pointer[] pointers = new Pointer[0];
+    private long[] moved = new long[0];
+    private int[] stack = new int[0];
+    private long[] marks = new long[0];
+    private long[] rootAddresses = new long[0];
+    private long cycles;
+    private long lastCycleEnd = System.nanoTime();
+
+    /**
+     * Initializes a collector that does not compact the memory.
+     * @param memory The memory, which must keep a table of its allocations, like {@link FirstFit}.
+     * @throws IllegalArgumentException If the memory does not keep a table of its allocations.
+     */
+    public GarbageCollector(Memory memory) {
+        this(memory, false);
+    }
+
+    /**
+     * Initializes a collector.
+     * @param memory The memory, which must keep a table of its allocations, like {@link FirstFit}.
+     * @param compact true if the memory should be compacted after every sweep, which
+     *                {@link FirstFit}, {@link BestFit} and {@link NextFit} support.
+     * @throws IllegalArgumentException If the memory does not keep a table of its allocations,
+     *                                  or should be compacted and can not be.
+     */
+    public GarbageCollector(Memory memory, boolean compact) {
+        if (memory.allocations() == null) {
+            throw new IllegalArgumentException(memory.getClass().getSimpleName() + " does not keep a table of its allocations");
+        }
+        if (compact && !memory.canSlide()) {
+            // Checked up front, since a cycle releases the garbage before it compacts
+            throw new IllegalArgumentException(memory.getClass().getSimpleName() + " can not be compacted");
+        }
+        this.memory = memory;
+        this.compact = compact;
+    }
+
+    /**
+     * Adds a root, which keeps the allocation it points into alive. A root is
+     * moved along when its allocation is moved by a compaction.
+     * @param p The pointer.
+     */
+    public void addRoot(Pointer p) {
+        roots.add(p);
+    }
+
+    /**
+     * Removes a root that was added before.
+     * @param p The pointer.
+     * @return true if the pointer was a root.
+     */
+    public boolean removeRoot(Pointer p) {
+        for (int i = 0; i < roots.size(); i++) {
+            if (roots.get(i) == p) {
+                roots.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs a full cycle: marks the allocations reachable from the roots,
+     * releases the rest and compacts the memory if the collector does so.
+     * @return What the cycle did.
+     */
+    public CollectionStats collect() {
+        long start = System.nanoTime();
+        AllocationTable table = memory.allocations();
+        addresses = table.addresses(addresses);
+        int count = table.count();
+        if (sizes.length < count) {
+            int length = addresses.length;
+            sizes = new int[length];
+            pointers = new Pointer[length];
+            moved = new long[length];
+            stack = new int[length];
+            marks = new long[(length + 63) >>> 6];
+        }
+        for (int i = 0; i < count; i++) {
+            sizes[i] = table.size(addresses[i]);
+            pointers[i] = table.pointer(addresses[i]);
+        }
+        Arrays.fill(marks, 0, (count + 63) >>> 6, 0);
+
+        mark(count);
+
+        // Keep the live allocations at the front of the arrays, in address order
+        int live = 0;
+        long liveCells = 0, freedCells = 0;
+        for (int i = 0; i < count; i++) {
+            if (isMarked(i)) {
+                addresses[live] = addresses[i];
+                sizes[live] = sizes[i];
+                pointers[live] = pointers[i];
+                liveCells += sizes[i];
+                live++;
+            } else {
+                freedCells += sizes[i];
+                memory.release(pointers[i]);
+            }
+        }
+
+        CompactionStats compaction = compact ? compact(live) : null;
+        // Do not keep the pointers alive until the next cycle
+        Arrays.fill(pointers, 0, count, null);
+        long end = System.nanoTime();
+        CollectionStats stats = new CollectionStats(++cycles, end - start, start - lastCycleEnd,
+                live, liveCells, count - live, freedCells, compaction);
+        lastCycleEnd = end;
+        return stats;
+    }
+
+    /**
+     * @return The number of cycles run so far.
+     */
+    public long cycles() {
+        return cycles;
+    }
+
+    private void mark(int count) {
+        int top = 0;
+        for (Pointer root : roots) {
+            top = mark(root.pointsAt(), count, top);
+        }
+        while (top > 0) {
+            int block = stack[--top];
+            long end = addresses[block] + sizes[block];
+            for (long cell = addresses[block]; cell < end; cell++) {
+                top = mark(memory.cells.get(cell), count, top);
+            }
+        }
+    }
+
+    /**
+     * Marks the allocation that holds the provided address and pushes it on
+     * the mark stack, unless it was already marked. Every allocation is pushed
+     * at most once, so the stack never holds more than all of them.
+     * @return The new top of the stack.
+     */
+    private int mark(long address, int count, int top) {
+        int block = find(address, count);
+        if (block >= 0 && !isMarked(block)) {
+            marks[block >>> 6] |= 1L << block;
+            stack[top++] = block;
+        }
+        return top;
+    }
+
+    private boolean isMarked(int block) {
+        return (marks[block >>> 6] & (1L << block)) != 0;
+    }
+
+    /**
+     * Finds the allocation whose cells include the provided address.
+     * @param address The address, which may be any cell value.
+     * @param count The number of allocations to search, at the front of the arrays.
+     * @return The index of the allocation, or -1 if the address is not inside one.
+     */
+    private int find(long address, int count) {
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (addresses[mid] <= address) low = mid + 1;
+            else high = mid - 1;
+        }
+        return high >= 0 && address - addresses[high] < sizes[high] ? high : -1;
+    }
+
+    /**
+     * Compacts the memory and redirects the roots and every reference in the
+     * live allocations. The compaction moves the pointers of the allocations,
+     * so their new addresses are read from them.
+     */
+    private CompactionStats compact(int live) {
+        if (rootAddresses.length < roots.size()) rootAddresses = new long[2 * roots.size()];
+        for (int i = 0; i < roots.size(); i++) {
+            rootAddresses[i] = roots.get(i).pointsAt();
+        }
+
+        CompactionStats stats = memory.slide();
+        if (stats.getBlocksRelocated() == 0) return stats;
+        for (int block = 0; block < live; block++) {
+            moved[block] = pointers[block].pointsAt();
+        }
+
+        for (int i = 0; i < roots.size(); i++) {
+            int block = find(rootAddresses[i], live);
+            if (block >= 0) roots.get(i).relocate(rootAddresses[i] + moved[block] - addresses[block]);
+        }
+        for (int block = 0; block < live; block++) {
+            long end = moved[block] + sizes[block];
+            for (long cell = moved[block]; cell < end; cell++) {
+                int value = memory.cells.get(cell);
+                int target = find(value, live);
+                if (target >= 0 && moved[target] != addresses[target]) {
+                    // Allocations only move down, so the new address fits in the cell as well
+                    memory.cells.set(cell, (int) (value + moved[target] - addresses[target]));
+                }
+            }
+        }
+        return stats;
+    }
+}
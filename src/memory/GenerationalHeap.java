@@ -0,0 +1,338 @@
+package memory;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * This memory model splits the cells into a nursery, where new allocations
+ * are made by bumping a pointer, and an old space managed by another memory,
+ * such as {@link FirstFit}, {@link BestFit} or {@link Buddy}.
+ * <p>
+ * An allocation stays alive until it is released, as in the other memories.
+ * Releasing an allocation in the nursery only marks it as dead. When the
+ * nursery is full, a minor collection copies the allocations that are still
+ * alive into the old space and redirects their pointers, and the whole
+ * nursery is reused at once. Allocations of more than half the nursery go
+ * to the old space directly.
+ * <p>
+ * Like a compaction, a minor collection only redirects pointers, and the
+ * cells are plain data. A heap can instead treat every cell that holds the
+ * address of a nursery cell as a reference. The old space then shares the
+ * cells of the heap through a {@link CardTable}, so every write through a
+ * {@link Pointer} that stores such an address in the old space dirties a
+ * card. A minor collection scans the dirty cards and the copied allocations,
+ * and rewrites every value that points into a copied allocation, like a
+ * copying collector would. This also rewrites data that only looks like an
+ * address, so it should only be used on heaps where such cells really hold
+ * references.
+ * <p>
+ * The nursery is the first allocation of the old space, so a compaction of
+ * the old space never moves it.
+ */
+public class GenerationalHeap extends Memory {
+    private final CardTable cards;
+    private final boolean references;
+    private final Memory old;
+    private final int nurseryStart;
+    private final int nurseryEnd;
+    private int top;
+
+    // The allocations in the nursery, in address order
+    private int count;
+    private int[] starts = new int[64];
+    private int[] sizes = new int[64];
+    private boolean[] dead = new boolean[64];
+    private Pointer[] pointers = new Pointer[64];
+    private Pointer[] copies = new Pointer[64];
+    private int[] forward = new int[64];
+
+    private long collections;
+    private long collectionNanos;
+    private long promotedCells;
+    private long lastCollectionEnd = System.nanoTime();
+
+    /**
+     * Initializes a generational heap with a {@link FirstFit} old space.
+     * @param size The number of cells.
+     * @param nurserySize The number of cells in the nursery.
+     */
+    public GenerationalHeap(int size, int nurserySize) {
+        this(size, nurserySize, FirstFit::new);
+    }
+
+    /**
+     * Initializes a generational heap where the cells are plain data.
+     * @param size The number of cells.
+     * @param nurserySize The number of cells in the nursery. A {@link Buddy} old
+     *                    space rounds it up to a power of two.
+     * @param oldSpace Creates the memory of the old space on top of the provided
+     *                 cells, for example {@code BestFit::new}. The memory must keep
+     *                 a table of its allocations.
+     * @throws IllegalArgumentException If the nursery does not fit in the memory, or the old space
+     *                                  does not keep a table of its allocations.
+     */
+    public GenerationalHeap(int size, int nurserySize, Function<CellStore, Memory> oldSpace) {
+        this(size, nurserySize, oldSpace, false);
+    }
+
+    /**
+     * Initializes a generational heap.
+     * @param size The number of cells.
+     * @param nurserySize The number of cells in the nursery. A {@link Buddy} old
+     *                    space rounds it up to a power of two.
+     * @param oldSpace Creates the memory of the old space on top of the provided
+     *                 cells, for example {@code BestFit::new}. The memory must keep
+     *                 a table of its allocations.
+     * @param references true if cells that hold the address of a nursery cell are
+     *                   references, which are rewritten when the nursery is collected.
+     * @throws IllegalArgumentException If the nursery does not fit in the memory, or the old space
+     *                                  does not keep a table of its allocations.
+     */
+    public GenerationalHeap(int size, int nurserySize, Function<CellStore, Memory> oldSpace, boolean references) {
+        this(new CardTable(CellStore.onHeap(size)), nurserySize, oldSpace, references);
+    }
+
+    private GenerationalHeap(CardTable cards, int nurserySize, Function<CellStore, Memory> oldSpace, boolean references) {
+        super(cards);
+        if (nurserySize < 2 || nurserySize >= intCapacity()) {
+            throw new IllegalArgumentException("The nursery must hold between 2 and " + (intCapacity() - 1) + " cells");
+        }
+        this.cards = cards;
+        this.references = references;
+        old = oldSpace.apply(cards);
+        if (old.allocations() == null) {
+            throw new IllegalArgumentException(old.getClass().getSimpleName() + " does not keep a table of its allocations");
+        }
+        Pointer nursery = old.alloc(nurserySize);
+        if (nursery == null) throw new IllegalArgumentException("The nursery does not fit in the old space");
+        nurseryStart = (int) nursery.pointsAt();
+        nurseryEnd = nurseryStart + nurserySize;
+        top = nurseryStart;
+        if (references) cards.setNursery(nurseryStart, nurseryEnd);
+    }
+
+    /**
+     * Allocates a number of memory cells.
+     * @param size the number of cells to allocate.
+     * @return The address of the first cell.
+     */
+    @Override
+    public Pointer alloc(int size) {
+        long start = metrics.start();
+        if (size > (nurseryEnd - nurseryStart) / 2) return allocated(old.alloc(size), size, 1, start);
+        if (size < 1 || nurseryEnd - top < size && collect() == null) {
+            error("No free memory");
+            return allocated(null, size, 0, start);
+        }
+
+        if (count == starts.length) grow();
+        Pointer p = pointer(top);
+        starts[count] = top;
+        sizes[count] = size;
+        dead[count] = false;
+        pointers[count] = p;
+        count++;
+        top += size;
+        return allocated(p, size, 0, start);
+    }
+
+    /**
+     * Releases a number of data cells. The cells of an allocation in the
+     * nursery are reused after the next minor collection.
+     * @param p The pointer to release.
+     */
+    @Override
+    public void release(Pointer p) {
+        long point = p.pointsAt();
+        if (point >= nurseryStart && point < nurseryEnd) {
+            int i = find((int) point);
+            if (i < 0 || starts[i] != point || dead[i]) {
+                error("Pointer not in memory");
+                return;
+            }
+            dead[i] = true;
+            pointers[i].releaseHandle();
+            released(point, sizes[i]);
+            return;
+        }
+
+        int size = old.allocations().size(point);
+        old.release(p);
+        if (size >= 0) released(point, size);
+    }
+
+    /**
+     * Runs a minor collection, which copies the live allocations of the
+     * nursery into the old space and empties the nursery. Nothing is changed
+     * if the old space can not hold them.
+     * @return What the collection did, or null if the old space is full.
+     */
+    public CollectionStats collect() {
+        long start = System.nanoTime();
+
+        // Make room for every copy first, so that a full old space leaves the nursery as it was
+        int live = 0;
+        long liveCells = 0, deadCells = 0;
+        for (int i = 0; i < count; i++) {
+            if (dead[i]) {
+                deadCells += sizes[i];
+                continue;
+            }
+            copies[i] = old.alloc(sizes[i]);
+            if (copies[i] == null) {
+                for (int j = 0; j < i; j++) {
+                    if (copies[j] != null) old.release(copies[j]);
+                    copies[j] = null;
+                }
+                return null;
+            }
+            live++;
+            liveCells += sizes[i];
+        }
+
+        // The old space may have compacted while making room, so the copies are only placed now
+        CellStore raw = cards.cells();
+        for (int i = 0; i < count; i++) {
+            if (dead[i]) continue;
+            forward[i] = (int) copies[i].pointsAt();
+            raw.move(starts[i], forward[i], sizes[i]);
+        }
+        AllocationTable promoted = old.allocations();
+        for (int i = 0; i < count; i++) {
+            if (dead[i]) continue;
+            // The old space keeps the pointer of the nursery allocation, so it is moved along by a compaction
+            pointers[i].relocate(forward[i]);
+            promoted.put(pointers[i], promoted.size(forward[i]));
+            copies[i].releaseHandle();
+            if (!references) continue;
+            long end = (long) forward[i] + sizes[i];
+            for (long cell = forward[i]; cell < end; cell++) redirect(raw, cell);
+        }
+        for (int card = 0; references && card < cards.cards(); card++) {
+            if (!cards.isDirty(card)) continue;
+            long end = Math.min(capacity(), (long) (card + 1) << CardTable.CARD_SHIFT);
+            for (long cell = (long) card << CardTable.CARD_SHIFT; cell < end; cell++) {
+                if (cell < nurseryStart || cell >= nurseryEnd) redirect(raw, cell);
+            }
+        }
+
+        cards.clear();
+        Arrays.fill(pointers, 0, count, null);
+        Arrays.fill(copies, 0, count, null);
+        int freed = count - live;
+        count = 0;
+        top = nurseryStart;
+
+        long end = System.nanoTime();
+        collections++;
+        collectionNanos += end - start;
+        promotedCells += liveCells;
+        CollectionStats stats = new CollectionStats(collections, end - start, start - lastCollectionEnd,
+                live, liveCells, freed, deadCells, null);
+        lastCollectionEnd = end;
+        return stats;
+    }
+
+    /**
+     * Rewrites a cell that points into a copied allocation to point into the copy.
+     */
+    private void redirect(CellStore raw, long cell) {
+        int value = raw.get(cell);
+        if (value < nurseryStart || value >= top) return;
+        int i = find(value);
+        if (i >= 0 && !dead[i]) raw.set(cell, forward[i] + value - starts[i]);
+    }
+
+    /**
+     * Finds the nursery allocation whose cells include the provided address.
+     * @param address An address inside the used part of the nursery.
+     * @return The index of the allocation, or -1 if there is none.
+     */
+    private int find(int address) {
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] <= address) low = mid + 1;
+            else high = mid - 1;
+        }
+        return high >= 0 && address - starts[high] < sizes[high] ? high : -1;
+    }
+
+    private void grow() {
+        int length = 2 * starts.length;
+        starts = Arrays.copyOf(starts, length);
+        sizes = Arrays.copyOf(sizes, length);
+        dead = Arrays.copyOf(dead, length);
+        pointers = Arrays.copyOf(pointers, length);
+        copies = Arrays.copyOf(copies, length);
+        forward = Arrays.copyOf(forward, length);
+    }
+
+    /**
+     * Turns handles on or off for the allocations that follow, in the nursery
+     * as well as in the old space.
+     * @param enabled true to give new allocations a handle.
+     */
+    @Override
+    public void useHandles(boolean enabled) {
+        super.useHandles(enabled);
+        old.useHandles(enabled);
+    }
+
+    /**
+     * Quiets or unquiets the nursery as well as the old space.
+     * @param quiet true to stop printing the messages.
+     */
+    @Override
+    public void setQuiet(boolean quiet) {
+        super.setQuiet(quiet);
+        old.setQuiet(quiet);
+    }
+
+    /**
+     * @return The number of minor collections so far.
+     */
+    public long collections() {
+        return collections;
+    }
+
+    /**
+     * @return The total time spent in minor collections, in nanoseconds.
+     */
+    public long collectionNanos() {
+        return collectionNanos;
+    }
+
+    /**
+     * @return The number of cells copied into the old space by minor collections.
+     */
+    public long promotedCells() {
+        return promotedCells;
+    }
+
+    @Override
+    long freeCells() {
+        long free = old.freeCells();
+        return free < 0 ? -1 : free + nurseryEnd - top;
+    }
+
+    @Override
+    long largestFreeExtent() {
+        return Math.max(old.largestFreeExtent(), nurseryEnd - top);
+    }
+
+    @Override
+    int freeExtentCount() {
+        int extents = old.freeExtentCount();
+        return extents < 0 || top == nurseryEnd ? extents : extents + 1;
+    }
+
+    /**
+     * Streams the layout of the old space to a sink, where the nursery is one allocation.
+     * @param sink The sink.
+     */
+    @Override
+    public void exportLayout(LayoutSink sink) {
+        old.exportLayout(sink);
+    }
+}
@@ -0,0 +1,72 @@
+package memory;
+
+import java.util.Arrays;
+
+/**
+ * A dense table of addresses, indexed by handle. A {@link Pointer} that holds
+ * a handle reads its address from the table, so every copy of the pointer
+ * follows the allocation when it is moved, and a move writes a single slot
+ * however many copies there are.
+ * <p>
+ * The handles of released allocations are reused. A released handle keeps
+ * its last address until then, like a released pointer without a handle.
+ * Handles may be taken and given back from any thread, for the memories that
+ * allocate concurrently; allocations are only moved while no other thread
+ * uses the memory.
+ */
+class HandleTable {
+    private volatile long[] addresses = new long[64];
+    private int count;
+    private int[] free = new int[16];
+    private int freeCount;
+
+    /**
+     * Takes a handle for a new allocation.
+     * @param address The address of the first cell.
+     * @return The handle.
+     */
+    synchronized int acquire(long address) {
+        int handle;
+        if (freeCount > 0) {
+            handle = free[--freeCount];
+        } else {
+            if (count == addresses.length) addresses = Arrays.copyOf(addresses, 2 * addresses.length);
+            handle = count++;
+        }
+        addresses[handle] = address;
+        return handle;
+    }
+
+    /**
+     * Gives a handle back, to be reused by a later allocation.
+     * @param handle The handle.
+     */
+    synchronized void release(int handle) {
+        if (freeCount == free.length) free = Arrays.copyOf(free, 2 * free.length);
+        free[freeCount++] = handle;
+    }
+
+    /**
+     * @param handle The handle.
+     * @return The address of the first cell of the allocation.
+     */
+    long address(int handle) {
+        return addresses[handle];
+    }
+
+    /**
+     * Moves the allocation of a handle.
+     * @param handle The handle.
+     * @param address The new address of the first cell.
+     */
+    void move(int handle, long address) {
+        addresses[handle] = address;
+    }
+
+    /**
+     * @return The number of handles in use.
+     */
+    synchronized int count() {
+        return count - freeCount;
+    }
+}
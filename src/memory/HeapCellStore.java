@@ -0,0 +1,42 @@
+package memory;
+
+/**
+ * A {@link CellStore} backed by an int array on the Java heap.
+ */
+class HeapCellStore extends CellStore {
+    private final int[] cells;
+
+    HeapCellStore(int size) {
+        cells = new int[size];
+    }
+
+    @Override
+    public long size() {
+        return cells.length;
+    }
+
+    @Override
+    public int get(long cell) {
+        return cells[(int) cell];
+    }
+
+    @Override
+    public void set(long cell, int value) {
+        cells[(int) cell] = value;
+    }
+
+    @Override
+    public void read(long cell, int[] dst, int offset, int length) {
+        System.arraycopy(cells, (int) cell, dst, offset, length);
+    }
+
+    @Override
+    public void write(long cell, int[] src, int offset, int length) {
+        System.arraycopy(src, offset, cells, (int) cell, length);
+    }
+
+    @Override
+    public void move(long from, long to, long length) {
+        System.arraycopy(cells, (int) from, cells, (int) to, (int) length);
+    }
+}
@@ -0,0 +1,148 @@
+package memory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A persistent memory, made of a memory-mapped file holding the cells and a
+ * metadata file next to it holding the allocations. Create the cells with
+ * {@link #create(Path, long)} and build any supported allocator on them, save
+ * the allocations with {@link #save(Memory)}, and later reopen the memory with
+ * {@link #open(Path)}. Reopening maps the cells instead of reading them, so it
+ * only costs as much as the number of allocations.
+ * <p>
+ * Supported allocators are {@link FirstFit}, {@link BestFit}, {@link NextFit} and {@link Buddy}.
+ * The cells are stored in the byte order of the platform.
+ */
+public class HeapImage {
+    private static final int MAGIC = 0x48454150;
+    private static final int VERSION = 2;
+
+    private HeapImage() {}
+
+    /**
+     * Creates an image file with every cell set to 0, replacing any existing file.
+     * @param image The path of the image.
+     * @param size The number of cells.
+     * @return The cells, mapped from the file.
+     * @throws IOException If the file can not be created or mapped.
+     */
+    public static CellStore create(Path image, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(image, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return BufferCellStore.map(channel, image, size);
+        }
+    }
+
+    /**
+     * Flushes the cells of a memory to its image and saves its allocations next to them.
+     * @param memory A memory built on cells from {@link #create(Path, long)} or {@link #open(Path)}.
+     * @throws IOException If the metadata can not be written.
+     * @throws IllegalArgumentException If the memory is not backed by a heap image or its allocator is not supported.
+     */
+    public static void save(Memory memory) throws IOException {
+        Path image = memory.cells instanceof BufferCellStore ? ((BufferCellStore) memory.cells).file() : null;
+        if (image == null) {
+            throw new IllegalArgumentException("The memory is not backed by a heap image");
+        }
+        AllocationTable allocations = allocations(memory);
+        memory.cells.flush();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(metadata(image))))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(memory.getClass().getSimpleName());
+            out.writeLong(memory.capacity());
+            out.writeInt(allocations.count());
+            for (long address : allocations.addresses()) {
+                out.writeLong(address);
+                out.writeInt(allocations.size(address));
+            }
+        }
+    }
+
+    /**
+     * Reopens a saved image, with the same allocator and allocations as when it was saved.
+     * @param image The path of the image.
+     * @return The memory.
+     * @throws IOException If the image can not be read or was not saved by a supported allocator.
+     */
+    public static Memory open(Path image) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(metadata(image))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a heap image: " + metadata(image));
+            }
+            if (in.readByte() != VERSION) {
+                throw new IOException("Unsupported heap image version: " + metadata(image));
+            }
+            String allocator = in.readUTF();
+            long size = in.readLong();
+
+            CellStore cells;
+            try (FileChannel channel = FileChannel.open(image, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (channel.size() < size * Integer.BYTES) {
+                    throw new IOException("The image holds less than " + size + " cells: " + image);
+                }
+                cells = BufferCellStore.map(channel, image, size);
+            }
+
+            Memory memory;
+            switch (allocator) {
+                case "FirstFit":
+                    memory = new FirstFit(cells);
+                    break;
+                case "BestFit":
+                    memory = new BestFit(cells);
+                    break;
+                case "NextFit":
+                    memory = new NextFit(cells);
+                    break;
+                case "Buddy":
+                    memory = new Buddy(cells);
+                    break;
+                default:
+                    throw new IOException("Unsupported allocator in heap image: " + allocator);
+            }
+
+            for (int i = in.readInt(); i > 0; i--) {
+                memory.restore(in.readLong(), in.readInt());
+            }
+            return memory;
+        }
+    }
+
+    /**
+     * Returns the pointers to the allocations of a memory, for example after reopening it.
+     * @param memory The memory.
+     * @return The pointers, in ascending order.
+     * @throws IllegalArgumentException If the allocator is not supported.
+     */
+    public static Pointer[] pointers(Memory memory) {
+        AllocationTable allocations = allocations(memory);
+        long[] addresses = allocations.addresses();
+        Pointer[] pointers = new Pointer[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+            pointers[i] = allocations.pointer(addresses[i]);
+        }
+        return pointers;
+    }
+
+    private static AllocationTable allocations(Memory memory) {
+        AllocationTable allocations = memory.allocations();
+        if (allocations == null) {
+            throw new IllegalArgumentException(memory.getClass().getSimpleName() + " can not be saved as a heap image");
+        }
+        return allocations;
+    }
+
+    private static Path metadata(Path image) {
+        return image.resolveSibling(image.getFileName() + ".meta");
+    }
+}
@@ -0,0 +1,47 @@
+package memory;
+
+import memory.MemoryUtil.Status;
+
+/**
+ * Receives the layout of a memory, see {@link Memory#exportLayout(LayoutSink)}.
+ * The memory first reports its cells as runs of the same status, in ascending
+ * address order, and then its allocations, also in ascending address order.
+ * Nothing is copied on the way: a sink that wants the contents of an
+ * allocation reads them through its pointer.
+ */
+public interface LayoutSink {
+    /**
+     * Called before the first extent.
+     * @param capacity The number of cells in the memory.
+     */
+    default void startExtents(long capacity) {
+    }
+
+    /**
+     * Called for every run of cells with the same status.
+     * @param start The first cell.
+     * @param length The number of cells.
+     * @param status The status of the cells.
+     */
+    void extent(long start, long length, Status status);
+
+    /**
+     * Called after the last extent, before the first allocation.
+     * @param count The number of allocations.
+     */
+    default void startAllocations(int count) {
+    }
+
+    /**
+     * Called for every allocation.
+     * @param pointer The pointer to the first cell, which must not be moved.
+     * @param size The number of cells.
+     */
+    void allocation(Pointer pointer, int size);
+
+    /**
+     * Called after the last allocation.
+     */
+    default void end() {
+    }
+}
@@ -9,6 +9,11 @@ package memory;
  * @since 1.0
  */
 public abstract class Memory extends RawMemory {
+	final MemoryMetrics metrics = new MemoryMetrics(this);
+	MemoryListener listener;
+	CompactionPolicy compactionPolicy = CompactionPolicy.FULL;
+	HandleTable handles;
+	boolean quiet;
 
 	/**
 	 * Initializes an instance of Memory.
@@ -19,6 +24,171 @@ public abstract class Memory extends RawMemory {
 		super(size);
 	}
 	
+	/**
+	 * Initializes an instance of Memory on top of existing cells, for example
+	 * an off-heap {@link CellStore}. Addresses are longs, so the store may
+	 * hold more than {@link Integer#MAX_VALUE} cells if the allocator supports it.
+	 * 
+	 * @param cells The cells of the memory.
+	 */
+	public Memory(CellStore cells) {
+		super(cells);
+		if (cells.size() < 1) {
+			throw new IllegalArgumentException("A memory holds at least 1 cell");
+		}
+	}
+	
+	/**
+	 * Returns the number of cells in the memory.
+	 * 
+	 * @return The number of cells.
+	 */
+	protected long capacity() {
+		return cells.size();
+	}
+	
+	/**
+	 * Returns the number of cells in the memory, for the allocators that keep
+	 * their addresses in ints.
+	 * 
+	 * @return The number of cells.
+	 * @throws IllegalArgumentException If the memory has more than {@link Integer#MAX_VALUE} cells.
+	 */
+	final int intCapacity() {
+		long capacity = cells.size();
+		if (capacity > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(getClass().getSimpleName() + " holds at most " + Integer.MAX_VALUE + " cells");
+		}
+		return (int) capacity;
+	}
+	
+	/**
+	 * Returns the metrics of the memory, which can also be exposed over JMX.
+	 * The allocators in this package keep them up to date.
+	 * 
+	 * @return The metrics.
+	 */
+	public MemoryMetrics metrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Sets the listener that receives the events of the memory, such as
+	 * {@link memory.jfr.JfrMemoryListener}. Combine listeners with
+	 * {@link MemoryListener#of(MemoryListener...)}. Without a listener, the
+	 * events cost a single check.
+	 * 
+	 * @param listener The listener, or null to stop sending events.
+	 */
+	public void setListener(MemoryListener listener) {
+		this.listener = listener;
+	}
+	
+	/**
+	 * Sets how much the memory compacts when an allocation does not fit in
+	 * any free extent, {@link CompactionPolicy#FULL} by default. Memories
+	 * that never move their allocations ignore it.
+	 * 
+	 * @param policy The policy.
+	 */
+	public void setCompactionPolicy(CompactionPolicy policy) {
+		compactionPolicy = policy;
+	}
+	
+	/**
+	 * Turns handles on or off for the allocations that follow. The pointer of
+	 * an allocation with a handle reads its address from a table of the
+	 * memory, so a compaction writes one slot per allocation and every
+	 * {@link Pointer#clone()} of the pointer stays valid. Pointing such a
+	 * pointer elsewhere detaches it from the handle, and leaves the allocation
+	 * and its other copies where they are. Existing pointers keep the
+	 * addressing they were created with. Every memory in this package hands
+	 * out handles, and the ones built on another memory, such as
+	 * {@link SlabAllocator}, turn them on there as well.
+	 * 
+	 * @param enabled true to give new allocations a handle.
+	 */
+	public void useHandles(boolean enabled) {
+		if (!enabled) handles = null;
+		else if (handles == null) handles = new HandleTable();
+	}
+	
+	/**
+	 * Turns the messages about failed allocations and unknown pointers on the
+	 * standard error off or on. A quiet memory still counts the failures in
+	 * its {@link #metrics()} and sends their events. Memories built on
+	 * another memory, such as {@link SlabAllocator}, quiet that one as well.
+	 * 
+	 * @param quiet true to stop printing the messages.
+	 */
+	public void setQuiet(boolean quiet) {
+		this.quiet = quiet;
+	}
+	
+	/**
+	 * Prints a message about a failed operation to the standard error, unless
+	 * the memory is quiet.
+	 * 
+	 * @param message The message.
+	 */
+	final void error(String message) {
+		if (!quiet) System.err.println(message);
+	}
+	
+	/**
+	 * Creates the pointer of a new allocation, with a handle if they are turned on.
+	 * 
+	 * @param address The address of the first cell.
+	 * @return The pointer.
+	 */
+	final Pointer pointer(long address) {
+		HandleTable h = handles;
+		return h == null ? new Pointer(address, this) : new Pointer(h, h.acquire(address), this);
+	}
+	
+	/**
+	 * Counts an allocation in the metrics and sends its event.
+	 * 
+	 * @param p The pointer the allocation returned, or null if it failed.
+	 * @param size The number of cells requested.
+	 * @param searchLength How many free extents, lists or arenas were looked at.
+	 * @param start When the allocation started, from {@link MemoryMetrics#start()}.
+	 * @return The pointer.
+	 */
+	final Pointer allocated(Pointer p, int size, int searchLength, long start) {
+		metrics.allocated(p, start);
+		MemoryListener l = listener;
+		if (l != null) {
+			if (p == null) l.allocationFailed(this, size);
+			else l.allocated(this, p.pointsAt(), size, searchLength);
+		}
+		return p;
+	}
+	
+	/**
+	 * Counts a release in the metrics and sends its event.
+	 * 
+	 * @param address The address of the first cell.
+	 * @param size The number of cells, or -1 if unknown.
+	 */
+	final void released(long address, int size) {
+		metrics.released();
+		MemoryListener l = listener;
+		if (l != null) l.released(this, address, size);
+	}
+	
+	/**
+	 * Counts a compaction in the metrics and sends its event.
+	 * 
+	 * @param stats What the compaction did.
+	 * @param start When the compaction started, from {@link System#nanoTime()}.
+	 */
+	final void compacted(CompactionStats stats, long start) {
+		metrics.compacted();
+		MemoryListener l = listener;
+		if (l != null) l.compacted(this, stats, System.nanoTime() - start);
+	}
+	
 	/**
 	 * Allocates a number of memory cells. 
 	 * 
@@ -35,12 +205,101 @@ public abstract class Memory extends RawMemory {
 	public abstract void release(Pointer p);
 	
 	/**
-	 * Prints a simple model of the memory. Example:
+	 * Prints a simple model of the memory, and the pointers, to the standard
+	 * output. Example:
 	 * 
-	 * |    0 -  110 | Allocated
-	 * |  111 -  150 | Free
-	 * |  151 -  999 | Allocated
-	 * | 1000 - 1024 | Free
+	 * 0 - 110 = ALLOCATED(111)
+	 * 111 - 150 = FREE(40)
+	 * 151 - 999 = ALLOCATED(849)
+	 * 1000 - 1023 = FREE(24)
+	 * 
+	 * @see TextLayoutSink
+	 */
+	public void printLayout() {
+		exportLayout(new TextLayoutSink(System.out));
+	}
+	
+	/**
+	 * Streams the layout of the memory to a sink: first the runs of free and
+	 * allocated cells, then the allocations, both in address order. The data
+	 * of the allocations is not copied, so this is cheap enough to take
+	 * periodic snapshots of large memories.
+	 * 
+	 * @param sink The sink, for example a {@link TextLayoutSink} or a {@link CsvLayoutSink}.
+	 */
+	public abstract void exportLayout(LayoutSink sink);
+	
+	/**
+	 * Returns the table of allocations, so that it can be saved in a
+	 * {@link HeapImage} or walked by a {@link GarbageCollector}. It must not
+	 * be changed from outside the memory.
+	 * 
+	 * @return The allocations, or null if the memory does not keep a table of them.
+	 */
+	AllocationTable allocations() {
+		return null;
+	}
+	
+	/**
+	 * Marks a number of cells as allocated without touching their data, when a
+	 * {@link HeapImage} is reopened.
+	 * 
+	 * @param address The address of the first cell.
+	 * @param size The number of cells.
+	 * @throws UnsupportedOperationException If the memory does not keep a table of its allocations.
 	 */
-	public abstract void printLayout();
+	void restore(long address, int size) {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " can not be restored from a heap image");
+	}
+	
+	/**
+	 * Returns whether the memory can move its allocations, so that a
+	 * {@link GarbageCollector} can compact it.
+	 * 
+	 * @return true if {@link #slide()} is supported.
+	 */
+	boolean canSlide() {
+		return false;
+	}
+	
+	/**
+	 * Slides every allocation down to the start of the memory, keeping them
+	 * in address order, for a {@link GarbageCollector}.
+	 * 
+	 * @return What the compaction did.
+	 * @throws UnsupportedOperationException If the memory can not move its allocations.
+	 */
+	CompactionStats slide() {
+		throw new UnsupportedOperationException(getClass().getSimpleName() + " can not be compacted");
+	}
+	
+	/**
+	 * Returns the number of free cells, for the {@link #metrics()}. Must not
+	 * scan the memory.
+	 * 
+	 * @return The number of free cells, or -1 if the memory does not track them.
+	 */
+	long freeCells() {
+		return -1;
+	}
+	
+	/**
+	 * Returns the length of the largest free extent, for the {@link #metrics()}.
+	 * Must not scan the memory.
+	 * 
+	 * @return The number of cells, or -1 if the memory does not track them.
+	 */
+	long largestFreeExtent() {
+		return -1;
+	}
+	
+	/**
+	 * Returns the number of free extents, for the {@link #metrics()}. Must not
+	 * scan the memory.
+	 * 
+	 * @return The number of extents, or -1 if the memory does not track them.
+	 */
+	int freeExtentCount() {
+		return -1;
+	}
 }
@@ -0,0 +1,119 @@
+package memory;
+
+/**
+ * Receives the events of a memory, see {@link Memory#setListener(MemoryListener)}.
+ * Every method does nothing by default, so a listener only implements the
+ * events it needs. The events are delivered on the thread that caused them,
+ * in the middle of the operation, so a listener must be quick and must not
+ * use the memory.
+ */
+public interface MemoryListener {
+    /**
+     * Called when cells were allocated.
+     * @param memory The memory.
+     * @param address The address of the first cell.
+     * @param size The number of cells requested.
+     * @param searchLength How many free extents, free lists or arenas the allocator looked at.
+     */
+    default void allocated(Memory memory, long address, int size, int searchLength) {
+    }
+
+    /**
+     * Called when an allocation failed.
+     * @param memory The memory.
+     * @param size The number of cells requested.
+     */
+    default void allocationFailed(Memory memory, int size) {
+    }
+
+    /**
+     * Called when cells were released.
+     * @param memory The memory.
+     * @param address The address of the first cell.
+     * @param size The number of cells, or -1 if the memory does not know it yet.
+     */
+    default void released(Memory memory, long address, int size) {
+    }
+
+    /**
+     * Called for every allocation a compaction moves.
+     * @param memory The memory.
+     * @param from The old address.
+     * @param to The new address.
+     * @param size The number of cells.
+     */
+    default void moved(Memory memory, long from, long to, int size) {
+    }
+
+    /**
+     * Called when a compaction is done.
+     * @param memory The memory.
+     * @param stats What the compaction did.
+     * @param nanos How long it took, in nanoseconds.
+     */
+    default void compacted(Memory memory, CompactionStats stats, long nanos) {
+    }
+
+    /**
+     * Called when a free block was split to serve an allocation, as {@link Buddy} does.
+     * @param memory The memory.
+     * @param address The address of the block that was kept.
+     * @param depth The number of times the block was halved.
+     */
+    default void split(Memory memory, long address, int depth) {
+    }
+
+    /**
+     * Called when a released block was merged with its free neighbours, as {@link Buddy} does.
+     * @param memory The memory.
+     * @param address The address of the merged block.
+     * @param depth The number of merges.
+     */
+    default void merged(Memory memory, long address, int depth) {
+    }
+
+    /**
+     * Combines listeners into one, which passes every event to each of them in order.
+     * @param listeners The listeners.
+     * @return The combined listener.
+     */
+    static MemoryListener of(MemoryListener... listeners) {
+        MemoryListener[] all = listeners.clone();
+        return new MemoryListener() {
+            @Override
+            public void allocated(Memory memory, long address, int size, int searchLength) {
+                for (MemoryListener l : all) l.allocated(memory, address, size, searchLength);
+            }
+
+            @Override
+            public void allocationFailed(Memory memory, int size) {
+                for (MemoryListener l : all) l.allocationFailed(memory, size);
+            }
+
+            @Override
+            public void released(Memory memory, long address, int size) {
+                for (MemoryListener l : all) l.released(memory, address, size);
+            }
+
+            @Override
+            public void moved(Memory memory, long from, long to, int size) {
+                for (MemoryListener l : all) l.moved(memory, from, to, size);
+            }
+
+            @Override
+            public void compacted(Memory memory, CompactionStats stats, long nanos) {
+                for (MemoryListener l : all) l.compacted(memory, stats, nanos);
+            }
+
+            @Override
+            public void split(Memory memory, long address, int depth) {
+                for (MemoryListener l : all) l.split(memory, address, depth);
+            }
+
+            @Override
+            public void merged(Memory memory, long address, int depth) {
+                for (MemoryListener l : all) l.merged(memory, address, depth);
+            }
+        };
+    }
+}
@@ -0,0 +1,166 @@
+package memory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The live metrics of a memory, see {@link Memory#metrics()}. The counters are
+ * updated by the allocator as it goes, and the free space figures come from the
+ * allocator's own index of free cells, so reading a metric never scans the
+ * memory. The counters may be updated from several threads.
+ * <p>
+ * A memory that is not thread-safe may be in the middle of an allocation when
+ * its free space is read from another thread, for example over JMX, so those
+ * figures can be slightly stale. Use {@link #snapshot()} to read all metrics at
+ * once from the thread that uses the memory.
+ * <p>
+ * Each bucket of the latency histogram is a {@link LongAdder} of its own, so
+ * threads allocating at once rarely contend on a counter. Timing costs two
+ * reads of {@link System#nanoTime()} per allocation, and can be turned off
+ * with {@link #setLatencyTiming(boolean)}.
+ */
+public class MemoryMetrics implements MemoryMetricsMXBean {
+    static final int BUCKETS = 32;
+
+    private final Memory memory;
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder failedAllocations = new LongAdder();
+    private final LongAdder releases = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder[] latencies = new LongAdder[BUCKETS];
+    private volatile boolean latencyTiming = true;
+
+    MemoryMetrics(Memory memory) {
+        this.memory = memory;
+        for (int i = 0; i < BUCKETS; i++) {
+            latencies[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Turns the timing of allocations on or off. It is on by default. The
+     * allocations made while it is off are counted, but not in the histogram
+     * of {@link #getAllocLatencyHistogram()}. Memories built on another memory
+     * time only their own allocations.
+     * @param enabled false to stop reading the clock on every allocation.
+     */
+    public void setLatencyTiming(boolean enabled) {
+        latencyTiming = enabled;
+    }
+
+    /**
+     * Reads the clock at the start of an allocation.
+     * @return The time from {@link System#nanoTime()}, or 0 if allocations are not timed.
+     */
+    long start() {
+        return latencyTiming ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Counts an allocation.
+     * @param p The pointer the allocation returned, or null if it failed.
+     * @param start When the allocation started, from {@link #start()}.
+     * @return The pointer.
+     */
+    Pointer allocated(Pointer p, long start) {
+        allocations.increment();
+        if (p == null) failedAllocations.increment();
+        if (start != 0) {
+            long nanos = System.nanoTime() - start;
+            latencies[Math.min(64 - Long.numberOfLeadingZeros(Math.max(nanos, 0)), BUCKETS - 1)].increment();
+        }
+        return p;
+    }
+
+    void released() {
+        releases.increment();
+    }
+
+    void compacted() {
+        compactions.increment();
+    }
+
+    @Override
+    public long getCapacity() {
+        return memory.capacity();
+    }
+
+    @Override
+    public long getLiveCells() {
+        long free = memory.freeCells();
+        return free < 0 ? -1 : memory.capacity() - free;
+    }
+
+    @Override
+    public long getFreeCells() {
+        return memory.freeCells();
+    }
+
+    @Override
+    public long getLargestFreeExtent() {
+        return memory.largestFreeExtent();
+    }
+
+    @Override
+    public int getFreeExtentCount() {
+        return memory.freeExtentCount();
+    }
+
+    @Override
+    public double getExternalFragmentation() {
+        return MetricsSnapshot.fragmentation(memory.freeCells(), memory.largestFreeExtent());
+    }
+
+    @Override
+    public long getAllocations() {
+        return allocations.sum();
+    }
+
+    @Override
+    public long getFailedAllocations() {
+        return failedAllocations.sum();
+    }
+
+    @Override
+    public long getReleases() {
+        return releases.sum();
+    }
+
+    @Override
+    public long getCompactions() {
+        return compactions.sum();
+    }
+
+    @Override
+    public long[] getAllocLatencyHistogram() {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = latencies[i].sum();
+        }
+        return histogram;
+    }
+
+    /**
+     * Reads all metrics at once.
+     * @return A copy of the metrics that does not change.
+     */
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(getCapacity(), getFreeCells(), getLargestFreeExtent(), getFreeExtentCount(),
+                getAllocations(), getFailedAllocations(), getReleases(), getCompactions(), getAllocLatencyHistogram());
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, under the name
+     * heapsim:type=Memory,name=&lt;name&gt;.
+     * @param name The name of the memory.
+     * @return The name the metrics were registered under.
+     * @throws JMException If the name is taken or can not be registered.
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("heapsim:type=Memory,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+}
@@ -0,0 +1,68 @@
+package memory;
+
+/**
+ * The metrics of a memory, as exposed over JMX by {@link MemoryMetrics#register(String)}.
+ * Sizes are in cells. Allocators that do not track their free space report -1
+ * for the free space figures.
+ */
+public interface MemoryMetricsMXBean {
+    /**
+     * @return The number of cells in the memory.
+     */
+    long getCapacity();
+
+    /**
+     * @return The number of cells that are not free, including any cells an allocator adds to a request.
+     */
+    long getLiveCells();
+
+    /**
+     * @return The number of free cells.
+     */
+    long getFreeCells();
+
+    /**
+     * @return The length of the largest run of free cells that can be allocated at once.
+     */
+    long getLargestFreeExtent();
+
+    /**
+     * @return The number of free extents.
+     */
+    int getFreeExtentCount();
+
+    /**
+     * @return One minus the share of the free cells that are in the largest free extent, from 0 to 1.
+     */
+    double getExternalFragmentation();
+
+    /**
+     * @return The number of allocations requested, including the failed ones.
+     */
+    long getAllocations();
+
+    /**
+     * @return The number of allocations that returned no pointer.
+     */
+    long getFailedAllocations();
+
+    /**
+     * @return The number of successful releases.
+     */
+    long getReleases();
+
+    /**
+     * @return The number of compactions.
+     */
+    long getCompactions();
+
+    /**
+     * Returns the latencies of the allocations as a histogram with power-of-two
+     * buckets: bucket 0 counts the allocations that took no measurable time, and
+     * bucket i the ones that took at least 2^(i-1) and less than 2^i nanoseconds.
+     * The last bucket also counts everything slower. Allocations made while the
+     * timing is off, see {@link MemoryMetrics#setLatencyTiming(boolean)}, are left out.
+     * @return The number of allocations per bucket.
+     */
+    long[] getAllocLatencyHistogram();
+}
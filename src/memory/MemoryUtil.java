@@ -1,6 +1,6 @@
 package memory;
 
-import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * @author Jimmy Maksymiw
@@ -11,28 +11,6 @@ public class MemoryUtil {
 
     public enum Status {FREE, ALLOCATED}
 
-    /**
-     * Returns a TreeMap<> that implements a Comparator to have the Pointer-objects sorted.
-     * @return The TreeMap<Pointer, Integer>.
-     */
-    public static TreeMap<Pointer, Integer> getTreeMap() {
-        return new TreeMap<>((Comparator<Pointer>) (p1, p2) -> {
-            if (p1.pointsAt() > p2.pointsAt()) return 1;
-            else if (p1.pointsAt() < p2.pointsAt()) return -1;
-            else return 0;
-        });
-    }
-
-    /**
-     * @param size The size of the array
-     * @return a Status-array filled with FREE.
-     */
-    public static Status[] getStatusArray(int size) {
-        Status[] s = new Status[size];
-        Arrays.fill(s, Status.FREE);
-        return s;
-    }
-
     /**
      * Prints a simple model of the memory:
      * 0 - 9 = ALLOCATED(10)
@@ -41,84 +19,200 @@ public class MemoryUtil {
      * 40 - 54 = FREE(15)
      * 55 - 69 = ALLOCATED(15)
      * 70 - 99 = FREE(30)
-     * @param memory The Status-array of the memory.
+     * @param memory The status bitmap of the memory.
      */
-    public static void printLayout(Status[] memory) {
-        System.out.println("\nMemory status:");
-        Status s = memory[0];
-        int first = 0;
-        int last = 0;
-        for (int i = 1; i < memory.length; i++) {
-            if (memory[i].equals(s)) {
-                last++;
-            } else {
-                System.out.println(first + " - " + last + " = " + s + "(" + (last - first + 1) + ")");
-                last++;
-                s = memory[i];
-                first = last;
-            }
-        }
-        System.out.println(first + " - " + last + " = " + s + "(" + (last - first + 1) + ")");
+    public static void printLayout(StatusBitmap memory) {
+        TextLayoutSink sink = new TextLayoutSink(System.out);
+        sink.startExtents(memory.size());
+        exportExtents(memory, sink);
     }
 
     /**
      * Prints all information about the pointers in ascending order.
      * @param pointers The pointers.
      */
-    public static void printPointerPos(TreeMap<Pointer, Integer> pointers) {
-        System.out.println("\nPointer positions:");
-        for(Map.Entry<Pointer,Integer> entry : pointers.entrySet()) {
-            Pointer p = entry.getKey();
-            Integer size = entry.getValue();
-            System.out.println("pointsAt: " + p.pointsAt() + ", size: " + size + ", data: " + Arrays.toString(p.read(size)));
+    public static void printPointerPos(AllocationTable pointers) {
+        TextLayoutSink sink = new TextLayoutSink(System.out);
+        sink.startAllocations(pointers.count());
+        exportAllocations(pointers, sink);
+        sink.end();
+    }
+
+    /**
+     * Streams the layout of a memory to a sink, see {@link LayoutSink}. The
+     * runs are found in the bitmap one at a time, so no list of extents is built.
+     * @param memoryStatus The status of the cells.
+     * @param pointers The allocations.
+     * @param sink The sink.
+     */
+    public static void exportLayout(StatusBitmap memoryStatus, AllocationTable pointers, LayoutSink sink) {
+        sink.startExtents(memoryStatus.size());
+        exportExtents(memoryStatus, sink);
+        sink.startAllocations(pointers.count());
+        exportAllocations(pointers, sink);
+        sink.end();
+    }
+
+    private static void exportExtents(StatusBitmap memoryStatus, LayoutSink sink) {
+        for (long first = 0, end; first < memoryStatus.size(); first = end) {
+            end = memoryStatus.runEnd(first);
+            sink.extent(first, end - first, memoryStatus.get(first));
+        }
+    }
+
+    private static void exportAllocations(AllocationTable pointers, LayoutSink sink) {
+        for (long address : pointers.addresses()) {
+            sink.allocation(pointers.pointer(address), pointers.size(address));
         }
     }
 
     /**
-     * Updates the provided status-array with the provided values.
+     * Updates the provided status bitmap with the provided values.
      * @param from Starting index.
      * @param to End index.
      * @param s status to update the selected
      */
-    public static void updateMemoryStatus(Status[] memStatus, int from, int to, Status s) {
-        for (; from < to; from++) {
-            memStatus[from] = s;
-        }
+    public static void updateMemoryStatus(StatusBitmap memStatus, long from, long to, Status s) {
+        memStatus.set(from, to, s);
     }
 
     /**
-     * Compacts the memory space.
+     * Compacts the memory space by sliding every allocation down to the lowest
+     * free address, in address order. The cells are moved in place, so nothing
+     * is allocated per block, and the statuses are updated in two bulk ranges.
+     * @param cells The cells of the memory.
+     * @param pointers The allocations, which are redirected to their new addresses.
+     * @param memoryStatus The status of the cells.
+     * @return What the compaction did.
      */
-    public static void compact(TreeMap<Pointer,Integer> pointers, Status[] memoryStatus){
-        int counter = 0, pointerLength, pointerStart;
-        for (Map.Entry<Pointer, Integer> entry : pointers.entrySet()) {
-            // Get pointer info
-            Pointer p = entry.getKey();
-            pointerStart = p.pointsAt();
-            pointerLength = entry.getValue();
-
-            // Update memory statuses
-            if (pointerStart != 0) {
-                for (int i = pointerStart; i < pointerStart + pointerLength; i++) {
-                    memoryStatus[i] = Status.FREE;
-                }
-            }
-            for (int i = counter; i < counter + pointerLength; i++) {
-                memoryStatus[i] = Status.ALLOCATED;
-            }
+    public static CompactionStats compact(CellStore cells, AllocationTable pointers, StatusBitmap memoryStatus) {
+        return compact(cells, pointers, memoryStatus, (Memory) null);
+    }
 
-            // Save the data written to the cells.
-            int[] data = p.read(pointerLength);
+    /**
+     * Compacts the cells of a memory like {@link #compact(CellStore, AllocationTable, StatusBitmap)},
+     * counts the compaction in its metrics and sends the events of the moves and
+     * the compaction to its listener.
+     * @param memory The memory.
+     * @param pointers The allocations, which are redirected to their new addresses.
+     * @param memoryStatus The status of the cells.
+     * @return What the compaction did.
+     */
+    static CompactionStats compact(Memory memory, AllocationTable pointers, StatusBitmap memoryStatus) {
+        long start = System.nanoTime();
+        CompactionStats stats = compact(memory.cells, pointers, memoryStatus, memory);
+        memory.compacted(stats, start);
+        return stats;
+    }
 
-            // Redirect pointer
-            p.pointAt(counter);
+    /**
+     * Compacts the memory space like {@link #compact(CellStore, AllocationTable, StatusBitmap)},
+     * with the same result, but computes the new addresses with a parallel
+     * prefix sum and moves the cells on a fork-join pool.
+     * @param cells The cells of the memory.
+     * @param pointers The allocations, which are redirected to their new addresses.
+     * @param memoryStatus The status of the cells.
+     * @param pool The pool that moves the cells.
+     * @return What the compaction did.
+     */
+    public static CompactionStats compact(CellStore cells, AllocationTable pointers, StatusBitmap memoryStatus, ForkJoinPool pool) {
+        return ParallelCompaction.compact(cells, pointers, memoryStatus, null, pool);
+    }
 
-            // Update the cells in the memory.
-            p.write(data);
+    /**
+     * Compacts the cells of a memory on a fork-join pool, counts the compaction
+     * in its metrics and sends the events of the moves and the compaction to
+     * its listener.
+     * @param memory The memory.
+     * @param pointers The allocations, which are redirected to their new addresses.
+     * @param memoryStatus The status of the cells.
+     * @param pool The pool that moves the cells.
+     * @return What the compaction did.
+     */
+    static CompactionStats compact(Memory memory, AllocationTable pointers, StatusBitmap memoryStatus, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        CompactionStats stats = ParallelCompaction.compact(memory.cells, pointers, memoryStatus, memory, pool);
+        memory.compacted(stats, start);
+        return stats;
+    }
+
+    /**
+     * Compacts part of a memory: slides the allocations after the lowest free
+     * extent down into it, one at a time in address order, until a free
+     * extent can hold the provided number of cells or the budget is spent.
+     * Every move merges the extent with the next one, so repeated steps end
+     * in the same layout as a full compaction.
+     * @param memory The memory.
+     * @param pointers The allocations, which are redirected to their new addresses.
+     * @param memoryStatus The status of the cells.
+     * @param freeExtents The free extents, which are kept up to date.
+     * @param size The number of cells the largest free extent should hold.
+     * @param budget The number of cells to move at most, except that at least one allocation is moved.
+     * @return What the step did, where the first free cell is the start of the lowest free extent.
+     */
+    static CompactionStats compactStep(Memory memory, AllocationTable pointers, StatusBitmap memoryStatus,
+                                       FreeExtents freeExtents, int size, int budget) {
+        long start = System.nanoTime();
+        MemoryListener listener = memory.listener;
+        long hole = freeExtents.lowest(), moved = 0;
+        int blocks = 0;
+        while (hole >= 0 && freeExtents.largest() < size) {
+            // Free extents are maximal, so an allocation starts right after the extent
+            long address = hole + freeExtents.length(hole);
+            if (address == memory.capacity()) break;
+            int pointerLength = pointers.size(address);
+            if (blocks > 0 && moved + pointerLength > budget) break;
+
+            memory.cells.move(address, hole, pointerLength);
+            Pointer p = pointers.pointer(address);
+            pointers.remove(address);
+            p.relocate(hole);
+            pointers.put(p, pointerLength);
+            freeExtents.release(address, pointerLength);
+            freeExtents.take(hole, pointerLength);
+            memoryStatus.set(hole + pointerLength, address + pointerLength, Status.FREE);
+            memoryStatus.set(hole, hole + pointerLength, Status.ALLOCATED);
+
+            blocks++;
+            moved += pointerLength;
+            if (listener != null) listener.moved(memory, address, hole, pointerLength);
+            hole += pointerLength;
+        }
+
+        CompactionStats stats = new CompactionStats(blocks, moved, hole < 0 ? memory.capacity() : hole);
+        if (blocks > 0) memory.compacted(stats, start);
+        return stats;
+    }
+
+    private static CompactionStats compact(CellStore cells, AllocationTable pointers, StatusBitmap memoryStatus, Memory memory) {
+        MemoryListener listener = memory == null ? null : memory.listener;
+        long counter = 0, moved = 0;
+        int blocks = 0;
+        for (long address : pointers.addresses()) {
+            int pointerLength = pointers.size(address);
+
+            if (address != counter) {
+                // Slide the cells down, the ranges may overlap
+                cells.move(address, counter, pointerLength);
+
+                // Redirect pointer
+                Pointer p = pointers.pointer(address);
+                pointers.remove(address);
+                p.relocate(counter);
+                pointers.put(p, pointerLength);
+
+                blocks++;
+                moved += pointerLength;
+                if (listener != null) listener.moved(memory, address, counter, pointerLength);
+            }
 
             // Set counter at first free slot
-            counter = p.pointsAt() + pointerLength;
+            counter += pointerLength;
         }
+
+        // Everything below the counter is allocated and everything above it free
+        memoryStatus.set(0, counter, Status.ALLOCATED);
+        memoryStatus.set(counter, memoryStatus.size(), Status.FREE);
+        return new CompactionStats(blocks, moved, counter);
     }
 }
-
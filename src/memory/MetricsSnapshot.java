@@ -0,0 +1,114 @@
+package memory;
+
+/**
+ * The metrics of a memory at one point in time, see {@link MemoryMetrics#snapshot()}.
+ */
+public class MetricsSnapshot implements MemoryMetricsMXBean {
+    private final long capacity;
+    private final long freeCells;
+    private final long largestFreeExtent;
+    private final int freeExtentCount;
+    private final long allocations;
+    private final long failedAllocations;
+    private final long releases;
+    private final long compactions;
+    private final long[] allocLatencyHistogram;
+
+    MetricsSnapshot(long capacity, long freeCells, long largestFreeExtent, int freeExtentCount, long allocations,
+                    long failedAllocations, long releases, long compactions, long[] allocLatencyHistogram) {
+        this.capacity = capacity;
+        this.freeCells = freeCells;
+        this.largestFreeExtent = largestFreeExtent;
+        this.freeExtentCount = freeExtentCount;
+        this.allocations = allocations;
+        this.failedAllocations = failedAllocations;
+        this.releases = releases;
+        this.compactions = compactions;
+        this.allocLatencyHistogram = allocLatencyHistogram;
+    }
+
+    static double fragmentation(long freeCells, long largestFreeExtent) {
+        if (freeCells < 0 || largestFreeExtent < 0) return -1;
+        return freeCells == 0 ? 0 : 1 - (double) largestFreeExtent / freeCells;
+    }
+
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getLiveCells() {
+        return freeCells < 0 ? -1 : capacity - freeCells;
+    }
+
+    @Override
+    public long getFreeCells() {
+        return freeCells;
+    }
+
+    @Override
+    public long getLargestFreeExtent() {
+        return largestFreeExtent;
+    }
+
+    @Override
+    public int getFreeExtentCount() {
+        return freeExtentCount;
+    }
+
+    @Override
+    public double getExternalFragmentation() {
+        return fragmentation(freeCells, largestFreeExtent);
+    }
+
+    @Override
+    public long getAllocations() {
+        return allocations;
+    }
+
+    @Override
+    public long getFailedAllocations() {
+        return failedAllocations;
+    }
+
+    @Override
+    public long getReleases() {
+        return releases;
+    }
+
+    @Override
+    public long getCompactions() {
+        return compactions;
+    }
+
+    @Override
+    public long[] getAllocLatencyHistogram() {
+        return allocLatencyHistogram.clone();
+    }
+
+    /**
+     * @return The allocation latency below which the provided share of the allocations fall,
+     * rounded up to a power of two nanoseconds, or 0 if nothing was allocated.
+     * @param quantile The share, from 0 to 1.
+     */
+    public long latencyQuantile(double quantile) {
+        long total = 0;
+        for (long count : allocLatencyHistogram) total += count;
+        long seen = 0;
+        for (int i = 0; i < allocLatencyHistogram.length; i++) {
+            seen += allocLatencyHistogram[i];
+            if (seen > 0 && seen >= quantile * total) return 1L << i;
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "live cells: " + getLiveCells() + ", free cells: " + freeCells + ", largest free extent: " + largestFreeExtent
+                + ", free extents: " + freeExtentCount + ", external fragmentation: " + String.format("%.3f", getExternalFragmentation())
+                + ", allocations: " + allocations + " (" + failedAllocations + " failed), releases: " + releases
+                + ", compactions: " + compactions + ", median alloc latency: <" + latencyQuantile(0.5) + " ns"
+                + ", 99th percentile: <" + latencyQuantile(0.99) + " ns";
+    }
+}
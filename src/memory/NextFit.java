@@ -0,0 +1,191 @@
+package memory;
+
+import memory.MemoryUtil.NoFreeMemoryException;
+import memory.MemoryUtil.Status;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This memory model allocates memory cells based on the next-fit method. The
+ * search for free cells resumes where the last allocation ended, and only wraps
+ * around to the start of the memory when nothing after it is large enough.
+ */
+public class NextFit extends Memory {
+    private StatusBitmap memoryStatus;
+    private AllocationTable pointers;
+    private FreeExtents freeExtents;
+    private long cursor;
+
+    /**
+     * Initializes an instance of a next fit-based memory.
+     * @param size The number of cells.
+     */
+    public NextFit(int size) {
+        super(size);
+        pointers = new AllocationTable();
+        memoryStatus = new StatusBitmap(capacity());
+        freeExtents = new FreeExtents(capacity());
+    }
+
+    /**
+     * Initializes an instance of a next fit-based memory.
+     * @param cells The cells of the memory, see {@link CellStore}.
+     */
+    public NextFit(CellStore cells) {
+        super(cells);
+        pointers = new AllocationTable();
+        memoryStatus = new StatusBitmap(capacity());
+        freeExtents = new FreeExtents(capacity());
+    }
+
+    /**
+     * Allocates a number of memory cells.
+     * @param size the number of cells to allocate.
+     * @return The address of the first cell.
+     */
+    @Override
+    public Pointer alloc(int size) {
+        long start = metrics.start();
+        // if there is no space left in the memory to allocate in the first loop it compacts as the policy allows and
+        // tries again, unless there are too few free cells in total for a compaction to help.
+        for (int i = 0; i < 2; i++) {
+            try {
+                long address = checkNextFreeSpace(size);
+                Pointer p = pointer(address);
+                pointers.put(p, size);
+                freeExtents.take(address, size);
+                MemoryUtil.updateMemoryStatus(memoryStatus, address, address + size, Status.ALLOCATED);
+                cursor = address + size < capacity() ? address + size : 0;
+                return allocated(p, size, freeExtents.searchLength(), start);
+            } catch (NoFreeMemoryException e) {
+                if (i == 0 && freeExtents.free() >= size && compactionPolicy != CompactionPolicy.NEVER) makeRoom(size);
+                else {
+                    error("No free memory");
+                    break;
+                }
+            }
+        }
+
+        return allocated(null, size, freeExtents.searchLength(), start);
+    }
+
+    /**
+     * Compacts as much as the compaction policy allows, to make room for an allocation.
+     * @param size The number of cells to make room for.
+     */
+    private void makeRoom(int size) {
+        if (compactionPolicy == CompactionPolicy.FULL) compact();
+        else MemoryUtil.compactStep(this, pointers, memoryStatus, freeExtents, size, compactionPolicy.getBudget());
+    }
+
+    /**
+     * Checks for the next free block with the provided value, starting at the
+     * end of the last allocation and wrapping around once.
+     * @param size The size of the block.
+     * @return the starting address to the next free block.
+     * @throws NoFreeMemoryException
+     */
+    private long checkNextFreeSpace(int size) throws NoFreeMemoryException {
+        if (size <= 0) throw new NoFreeMemoryException();
+        long address = freeExtents.nextFit(cursor, size);
+        if (address < 0) address = freeExtents.firstFit(size);
+        if (address < 0) throw new NoFreeMemoryException();
+        return address;
+    }
+
+    /**
+     * Releases a number of data cells
+     * @param p The pointer to release.
+     */
+    @Override
+    public void release(Pointer p) {
+        long point = p.pointsAt();
+        int size = pointers.size(point);
+        if (size < 0) {
+            error("Pointer not in memory");
+            return;
+        }
+        MemoryUtil.updateMemoryStatus(memoryStatus, point, point + size, Status.FREE);
+        freeExtents.release(point, size);
+        pointers.pointer(point).releaseHandle();
+        pointers.remove(point);
+        released(point, size);
+    }
+
+    @Override
+    AllocationTable allocations() {
+        return pointers;
+    }
+
+    @Override
+    void restore(long address, int size) {
+        pointers.put(pointer(address), size);
+        freeExtents.take(address, size);
+        MemoryUtil.updateMemoryStatus(memoryStatus, address, address + size, Status.ALLOCATED);
+    }
+
+    @Override
+    boolean canSlide() {
+        return true;
+    }
+
+    @Override
+    CompactionStats slide() {
+        return compact();
+    }
+
+    @Override
+    long freeCells() {
+        return freeExtents.free();
+    }
+
+    @Override
+    long largestFreeExtent() {
+        return freeExtents.largest();
+    }
+
+    @Override
+    int freeExtentCount() {
+        return freeExtents.count();
+    }
+
+    @Override
+    public void exportLayout(LayoutSink sink) {
+        MemoryUtil.exportLayout(memoryStatus, pointers, sink);
+    }
+
+    /**
+     * Compacts the memory space, and moves the cursor to the first free cell.
+     * @return What the compaction did.
+     */
+    public CompactionStats compact() {
+        CompactionStats stats = MemoryUtil.compact(this, pointers, memoryStatus);
+        freeExtents.reset(stats.getFirstFree());
+        cursor = stats.getFirstFree() < capacity() ? stats.getFirstFree() : 0;
+        return stats;
+    }
+
+    /**
+     * Compacts the memory space like {@link #compact()}, moving the cells on a fork-join pool.
+     * @param pool The pool that moves the cells.
+     * @return What the compaction did.
+     */
+    public CompactionStats compact(ForkJoinPool pool) {
+        CompactionStats stats = MemoryUtil.compact(this, pointers, memoryStatus, pool);
+        freeExtents.reset(stats.getFirstFree());
+        cursor = stats.getFirstFree() < capacity() ? stats.getFirstFree() : 0;
+        return stats;
+    }
+
+    /**
+     * Compacts part of the memory, sliding the allocations after the lowest free extent
+     * down into it until about the provided number of cells have moved. Calling it
+     * between allocations spreads a compaction over time, and enough steps end in the
+     * layout of {@link #compact()}.
+     * @param budget The number of cells to move at most, except that at least one allocation is moved.
+     * @return What the step did.
+     */
+    public CompactionStats compactStep(int budget) {
+        return MemoryUtil.compactStep(this, pointers, memoryStatus, freeExtents, Integer.MAX_VALUE, budget);
+    }
+}
@@ -0,0 +1,169 @@
+package memory;
+
+import memory.MemoryUtil.Status;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Slides every allocation down to the lowest free address like
+ * {@link MemoryUtil#compact(CellStore, AllocationTable, StatusBitmap)}, but
+ * moves the cells on a fork-join pool. The result is the same layout.
+ * <p>
+ * The new address of every allocation is the sum of the sizes below it, found
+ * with a parallel prefix sum. The allocations that move are then cut into
+ * chunks of consecutive allocations. The allocations of a chunk land in one
+ * contiguous range below where they were, and the destinations of the later
+ * chunks follow each other from where the next chunk lands, so only that
+ * part of a chunk can be overwritten before it is read. Chunks are moved in
+ * rounds: first every chunk of a round copies the part of its cells that the
+ * later chunks of the round write to, which is at most as long as the
+ * distance the chunk moves, and then all of them move in place at once,
+ * each on its own range of cells.
+ * <p>
+ * The pointers and the table of allocations are updated afterwards, in
+ * address order, since the table is not safe for concurrent updates.
+ */
+class ParallelCompaction {
+    private static final int CHUNK_CELLS = 1 << 16;
+    private static final long ROUND_CELLS = 1L << 22;
+
+    private final CellStore cells;
+    private final long[] addresses;
+    private final int[] sizes;
+    private final long[] forward;
+
+    // Chunk k holds the allocations from chunks[k] up to chunks[k + 1]
+    private int[] chunks;
+    private int chunkCount;
+
+    private ParallelCompaction(CellStore cells, long[] addresses, int[] sizes, long[] forward) {
+        this.cells = cells;
+        this.addresses = addresses;
+        this.sizes = sizes;
+        this.forward = forward;
+    }
+
+    /**
+     * Compacts a memory on a fork-join pool.
+     * @param cells The cells of the memory.
+     * @param pointers The allocations, which are redirected to their new addresses.
+     * @param memoryStatus The status of the cells.
+     * @param memory The memory whose listener receives the moves, or null.
+     * @param pool The pool that moves the cells.
+     * @return What the compaction did.
+     */
+    static CompactionStats compact(CellStore cells, AllocationTable pointers, StatusBitmap memoryStatus,
+                                   Memory memory, ForkJoinPool pool) {
+        long[] addresses = pointers.addresses();
+        int n = addresses.length;
+        int[] sizes = new int[n];
+        long[] forward = new long[n];
+        pool.submit(() -> {
+            Arrays.parallelSetAll(sizes, i -> pointers.size(addresses[i]));
+            Arrays.parallelSetAll(forward, i -> sizes[i]);
+            Arrays.parallelPrefix(forward, Long::sum);
+            Arrays.parallelSetAll(forward, i -> forward[i] - sizes[i]);
+        }).join();
+        long firstFree = n == 0 ? 0 : forward[n - 1] + sizes[n - 1];
+
+        // Everything below the first allocation that moves is already in place
+        int first = 0;
+        while (first < n && forward[first] == addresses[first]) first++;
+
+        ParallelCompaction compaction = new ParallelCompaction(cells, addresses, sizes, forward);
+        compaction.split(first, n);
+        compaction.move(pool);
+
+        MemoryListener listener = memory == null ? null : memory.listener;
+        long moved = 0;
+        for (int i = first; i < n; i++) {
+            Pointer p = pointers.pointer(addresses[i]);
+            pointers.remove(addresses[i]);
+            p.relocate(forward[i]);
+            pointers.put(p, sizes[i]);
+            moved += sizes[i];
+            if (listener != null) listener.moved(memory, addresses[i], forward[i], sizes[i]);
+        }
+
+        memoryStatus.set(0, firstFree, Status.ALLOCATED);
+        memoryStatus.set(firstFree, memoryStatus.size(), Status.FREE);
+        return new CompactionStats(n - first, moved, firstFree);
+    }
+
+    /**
+     * Cuts the allocations that move into chunks that span at most
+     * {@link #CHUNK_CELLS} cells, unless a single allocation is larger, so the
+     * cells a chunk saves always fit in an array.
+     */
+    private void split(int first, int n) {
+        chunks = new int[16];
+        chunkCount = 0;
+        for (int i = first; i < n; ) {
+            if (chunkCount + 1 == chunks.length) chunks = Arrays.copyOf(chunks, 2 * chunks.length);
+            chunks[chunkCount++] = i;
+            long start = addresses[i++];
+            while (i < n && addresses[i] + sizes[i] - start <= CHUNK_CELLS) i++;
+        }
+        chunks[chunkCount] = n;
+    }
+
+    private void move(ForkJoinPool pool) {
+        long[] savedFrom = new long[chunkCount];
+        int[][] saved = new int[chunkCount][];
+        for (int round = 0; round < chunkCount; ) {
+            int end = round;
+            for (long length = 0; end < chunkCount && length < ROUND_CELLS; end++) {
+                length += sourceEnd(end) - addresses[chunks[end]];
+            }
+            int from = round, last = end - 1;
+            long overwrittenTo = destinationEnd(last);
+            pool.submit(() -> IntStream.range(from, last).parallel().forEach(k -> {
+                // The later chunks of the round write from where the next chunk lands
+                savedFrom[k] = Math.max(addresses[chunks[k]], forward[chunks[k + 1]]);
+                long savedTo = Math.min(sourceEnd(k), overwrittenTo);
+                if (savedFrom[k] < savedTo) {
+                    // At most the distance the chunk moves, and at most its own length
+                    saved[k] = new int[(int) (savedTo - savedFrom[k])];
+                    cells.read(savedFrom[k], saved[k], 0, saved[k].length);
+                }
+            })).join();
+            pool.submit(() -> IntStream.rangeClosed(from, last).parallel().forEach(k -> {
+                moveInPlace(k, savedFrom[k], saved[k]);
+                saved[k] = null;
+            })).join();
+            round = end;
+        }
+    }
+
+    private long sourceEnd(int chunk) {
+        int last = chunks[chunk + 1] - 1;
+        return addresses[last] + sizes[last];
+    }
+
+    private long destinationEnd(int chunk) {
+        int last = chunks[chunk + 1] - 1;
+        return forward[last] + sizes[last];
+    }
+
+    /**
+     * Moves the allocations of a chunk in address order, taking the cells that
+     * were saved from the copy. Every allocation moves down, so it never
+     * overwrites cells of the chunk that are still to be read.
+     * @param chunk The chunk.
+     * @param savedFrom The address of the first saved cell.
+     * @param saved The saved cells, or null if there are none.
+     */
+    private void moveInPlace(int chunk, long savedFrom, int[] saved) {
+        long savedTo = saved == null ? savedFrom : savedFrom + saved.length;
+        for (int i = chunks[chunk]; i < chunks[chunk + 1]; i++) {
+            long start = addresses[i], end = start + sizes[i], offset = forward[i] - start;
+            long below = Math.min(end, Math.max(start, savedFrom));
+            long above = Math.max(below, Math.min(end, savedTo));
+            cells.move(start, start + offset, below - start);
+            if (below < above) cells.write(below + offset, saved, (int) (below - savedFrom), (int) (above - below));
+            cells.move(above, above + offset, end - above);
+        }
+    }
+}
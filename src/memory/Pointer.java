@@ -3,14 +3,17 @@ package memory;
 /**
  * A simple class representing a pointer. It points to a specific address in
  * the memory space (see {@link RawMemory}). Using the pointer, the memory can
- * be read and written.
+ * be read and written. Addresses are longs, so a pointer can reach past
+ * {@link Integer#MAX_VALUE} cells in the memories that hold that many.
  * 
  * @author "Johan Holmberg, Malmö university"
  * @since 1.0
  */
 public class Pointer {
-	private int address;
+	private long address;
 	private RawMemory memory;
+	private HandleTable handles;
+	private int handle;
 	
 	/**
 	 * Initializes an instance of Pointer.
@@ -24,7 +27,7 @@ public class Pointer {
 	 * 
 	 * @param address The address to point at.
 	 */
-	public Pointer(int address, RawMemory memory) {
+	public Pointer(long address, RawMemory memory) {
 		this.memory = memory;
 		if (address >= 0) {
 			this.address = address;
@@ -32,23 +35,59 @@ public class Pointer {
 	}
 	
 	/**
-	 * Points the pointer at a new address.
+	 * Initializes an instance of Pointer that reads its address from a handle
+	 * table, so that it and all its copies follow the allocation when it is
+	 * moved.
+	 * 
+	 * @param handles The handle table.
+	 * @param handle The handle of the allocation.
+	 */
+	Pointer(HandleTable handles, int handle, RawMemory memory) {
+		this.memory = memory;
+		this.handles = handles;
+		this.handle = handle;
+	}
+	
+	/**
+	 * Points the pointer at a new address. A pointer with a handle lets go of
+	 * it and holds the plain address from then on, so the allocation and the
+	 * other copies of the pointer stay where they are.
 	 * 
 	 * @param address The address to point at.
 	 */
-	public void pointAt(int address) {
+	public void pointAt(long address) {
 		if (address >= 0) {
 			this.address = address;
+			handles = null;
 		}
 	}
 	
+	/**
+	 * Moves the pointer along with its allocation, when a memory relocates it.
+	 * A pointer with a handle moves every copy of itself.
+	 * 
+	 * @param address The new address of the allocation.
+	 */
+	void relocate(long address) {
+		if (handles == null) this.address = address;
+		else handles.move(handle, address);
+	}
+	
 	/**
 	 * Returns the address being pointed at.
 	 * 
 	 * @return The address.
 	 */
-	public int pointsAt() {
-		return address;
+	public long pointsAt() {
+		return handles == null ? address : handles.address(handle);
+	}
+	
+	/**
+	 * Gives the handle of the pointer back to its table, when the allocation
+	 * is released. Does nothing if the pointer holds a plain address.
+	 */
+	void releaseHandle() {
+		if (handles != null) handles.release(handle);
 	}
 	
 	/**
@@ -57,7 +96,7 @@ public class Pointer {
 	 * @param data The data to write.
 	 */
 	public void write(int[] data) {
-		memory.write(address, data);
+		memory.write(pointsAt(), data);
 	}
 	
 	/**
@@ -68,10 +107,65 @@ public class Pointer {
 	 * @return The data.
 	 */
 	public int[] read(int length) {
-		return memory.read(address, length);
+		return memory.read(pointsAt(), length);
 	}
 
+	/**
+	 * Writes part of an array to the memory, starting at the address being
+	 * pointed at. Nothing is allocated, and the range is checked up front.
+	 * 
+	 * @param data The data to write.
+	 * @param offset The first index in the data.
+	 * @param length The number of cells to write.
+	 * @throws IndexOutOfBoundsException If the range is outside the memory or the data.
+	 */
+	public void write(int[] data, int offset, int length) {
+		memory.write(pointsAt(), data, offset, length);
+	}
+	
+	/**
+	 * Reads from the memory into an array provided by the caller, so that
+	 * repeated reads do not allocate.
+	 * 
+	 * @param buffer The array to read into.
+	 * @param offset The first index in the array.
+	 * @param length The number of cells to read.
+	 * @throws IndexOutOfBoundsException If the range is outside the memory or the array.
+	 */
+	public void read(int[] buffer, int offset, int length) {
+		memory.read(pointsAt(), buffer, offset, length);
+	}
+	
+	/**
+	 * Reads a single cell, relative to the address being pointed at.
+	 * 
+	 * @param index The index of the cell.
+	 * @return The value of the cell.
+	 * @throws IndexOutOfBoundsException If the cell is outside the memory.
+	 */
+	public int get(int index) {
+		return memory.get(pointsAt() + index);
+	}
+	
+	/**
+	 * Writes a single cell, relative to the address being pointed at.
+	 * 
+	 * @param index The index of the cell.
+	 * @param value The value to write.
+	 * @throws IndexOutOfBoundsException If the cell is outside the memory.
+	 */
+	public void set(int index, int value) {
+		memory.set(pointsAt() + index, value);
+	}
+
+	/**
+	 * Copies the pointer. A copy of a pointer with a handle shares it, so it
+	 * stays valid when the allocation is moved, until it is pointed elsewhere.
+	 * 
+	 * @return The copy.
+	 */
 	public Pointer clone() {
+		if (handles != null) return new Pointer(handles, handle, memory);
 		return new Pointer(this.address, this.memory);
 	}
 }
@@ -2,13 +2,14 @@ package memory;
 
 /**
  * Simulates a memory space, made out of a number of memory cells. Each cell
- * holds an int value.
+ * holds an int value. The cells are kept in a {@link CellStore}, which lives on
+ * the Java heap unless another store is provided.
  * 
  * @author "Johan Holmberg, Malmö university"
  * @since 1.0
  */
 class RawMemory {
-	protected int[] cells;
+	protected CellStore cells;
 	
 	/**
 	 * Initializes a memory instance.
@@ -19,7 +20,16 @@ class RawMemory {
 		if (size < 1) {
 			size = 1;
 		}
-		cells = new int[size];
+		cells = CellStore.onHeap(size);
+	}
+	
+	/**
+	 * Initializes a memory instance on top of existing cells.
+	 * 
+	 * @param cells The cells of the memory.
+	 */
+	public RawMemory(CellStore cells) {
+		this.cells = cells;
 	}
 	
 	/**
@@ -28,12 +38,14 @@ class RawMemory {
 	 * @param address The address to write to. 
 	 * @param data The data to write.
 	 */
-	protected void write(int address, int[] data) {
-		try {
-			for (int i = 0; i < data.length; i++) {
-				cells[address + i] = data[i];
-			}
-		} catch (ArrayIndexOutOfBoundsException e) {}
+	protected void write(long address, int[] data) {
+		if (address < 0) {
+			return;
+		}
+		int length = (int) Math.min(data.length, cells.size() - address);
+		if (length > 0) {
+			cells.write(address, data, 0, length);
+		}
 	}
 	
 	/**
@@ -44,23 +56,86 @@ class RawMemory {
 	 * 
 	 * @return The data.
 	 */
-	protected int[] read(int address, int length) {
+	protected int[] read(long address, int length) {
 		int[] data = new int[length];
-		try {
-			for (int i = 0; i < length; i++) {
-				data[i] = cells[address + i];
-			}
-		} catch (ArrayIndexOutOfBoundsException e) {}
+		if (address >= 0 && address < cells.size()) {
+			cells.read(address, data, 0, (int) Math.min(length, cells.size() - address));
+		}
 		
 		return data;
 	}
 	
+	/**
+	 * Writes part of an array to the memory, without allocating.
+	 * 
+	 * @param address The address to write to.
+	 * @param data The data to write.
+	 * @param offset The first index in the data.
+	 * @param length The number of cells to write.
+	 * @throws IndexOutOfBoundsException If the range is outside the memory or the data.
+	 */
+	protected void write(long address, int[] data, int offset, int length) {
+		checkRange(address, length, data, offset);
+		cells.write(address, data, offset, length);
+	}
+	
+	/**
+	 * Reads a piece of data from the memory into an array, without allocating.
+	 * 
+	 * @param address The address to read from.
+	 * @param buffer The array to read into.
+	 * @param offset The first index in the array.
+	 * @param length The number of cells to read.
+	 * @throws IndexOutOfBoundsException If the range is outside the memory or the array.
+	 */
+	protected void read(long address, int[] buffer, int offset, int length) {
+		checkRange(address, length, buffer, offset);
+		cells.read(address, buffer, offset, length);
+	}
+	
+	/**
+	 * Reads a single cell.
+	 * 
+	 * @param address The address of the cell.
+	 * @return The value of the cell.
+	 * @throws IndexOutOfBoundsException If the address is outside the memory.
+	 */
+	protected int get(long address) {
+		if (address < 0 || address >= cells.size()) {
+			throw new IndexOutOfBoundsException("Address " + address + " outside memory of " + cells.size() + " cells");
+		}
+		return cells.get(address);
+	}
+	
+	/**
+	 * Writes a single cell.
+	 * 
+	 * @param address The address of the cell.
+	 * @param value The value to write.
+	 * @throws IndexOutOfBoundsException If the address is outside the memory.
+	 */
+	protected void set(long address, int value) {
+		if (address < 0 || address >= cells.size()) {
+			throw new IndexOutOfBoundsException("Address " + address + " outside memory of " + cells.size() + " cells");
+		}
+		cells.set(address, value);
+	}
+	
+	private void checkRange(long address, int length, int[] array, int offset) {
+		if (address < 0 || length < 0 || address + length > cells.size()) {
+			throw new IndexOutOfBoundsException("Cells " + address + " - " + (address + length - 1) + " outside memory of " + cells.size() + " cells");
+		}
+		if (offset < 0 || offset + (long) length > array.length) {
+			throw new IndexOutOfBoundsException("Index " + offset + " - " + (offset + (long) length - 1) + " outside array of " + array.length);
+		}
+	}
+	
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
 		
-		for (int data : cells) {
-			sb.append(data + "\n");
+		for (long i = 0; i < cells.size(); i++) {
+			sb.append(cells.get(i) + "\n");
 		}
 		
 		return sb.toString();
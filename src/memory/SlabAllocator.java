@@ -0,0 +1,258 @@
+package memory;
+
+/**
+ * This memory model allocates small memory cells from slabs. A request of at
+ * most 64 cells is rounded up to a size class, and every class is served from
+ * slabs of 64 slots, with one bit per slot telling whether it is taken. Finding
+ * a free slot takes constant time, and objects of the same size are packed
+ * together instead of scattering holes over the memory.
+ * <p>
+ * The slabs themselves, and every request above 64 cells, are allocated from
+ * a backing memory that shares the same cells. The backing memory must not
+ * move its allocations, so a compacting allocator such as {@link FirstFit}
+ * cannot be used. A slab that becomes empty is returned to it, unless it is
+ * the last one of its class with free slots.
+ * <p>
+ * A release finds its slab in constant time, through a table with one entry
+ * per 64 cells holding the slab that covers the first of them. Every slab is
+ * at least 64 cells long, so a slab that starts inside such a stretch covers
+ * the first cell of the next one.
+ */
+public class SlabAllocator extends Memory {
+    private static final int[] SIZE_CLASSES = {1, 2, 3, 4, 6, 8, 12, 16, 24, 32, 48, 64};
+    private static final int SLOTS = 64;
+    private static final int THRESHOLD = SIZE_CLASSES[SIZE_CLASSES.length - 1];
+    private static final int GRANULE_SHIFT = 6;
+
+    private static class Slab {
+        private final Pointer region;
+        private final long start;
+        private final long end;
+        private final int sizeClass;
+        private long used;
+        private Slab previous;
+        private Slab next;
+
+        private Slab(Pointer region, int sizeClass) {
+            this.region = region;
+            this.start = region.pointsAt();
+            this.end = start + (long) SIZE_CLASSES[sizeClass] * SLOTS;
+            this.sizeClass = sizeClass;
+        }
+    }
+
+    private final Memory backing;
+    private final int[] classOf = new int[THRESHOLD + 1];
+    private final Slab[] partial = new Slab[SIZE_CLASSES.length];
+    private Slab[] slabs = new Slab[16];
+    private final AllocationTable pointers = new AllocationTable();
+    // The requests above the threshold, which were allocated from the backing memory directly
+    private final AllocationTable large = new AllocationTable();
+
+    /**
+     * Initializes an instance of a slab-based memory, backed by a {@link TwoLevelSegregatedFit}.
+     * @param size The number of cells.
+     */
+    public SlabAllocator(int size) {
+        this(new TwoLevelSegregatedFit(size));
+    }
+
+    /**
+     * Initializes an instance of a slab-based memory on top of another memory.
+     * @param backing The memory that provides the slabs and serves large requests.
+     *                It must not move its allocations.
+     */
+    public SlabAllocator(Memory backing) {
+        super(backing.cells);
+        this.backing = backing;
+        for (int size = 1, c = 0; size <= THRESHOLD; size++) {
+            if (size > SIZE_CLASSES[c]) c++;
+            classOf[size] = c;
+        }
+    }
+
+    /**
+     * Allocates a number of memory cells.
+     * @param size the number of cells to allocate.
+     * @return The address of the first cell.
+     */
+    @Override
+    public Pointer alloc(int size) {
+        long start = metrics.start();
+        if (size > THRESHOLD) {
+            Pointer p = backing.alloc(size);
+            if (p != null) large.put(p, size);
+            return allocated(p, size, 1, start);
+        }
+        if (size < 1) return allocated(null, size, 0, start);
+
+        int c = classOf[size];
+        Slab slab = partial[c];
+        if (slab == null) {
+            Pointer region = backing.alloc(SIZE_CLASSES[c] * SLOTS);
+            if (region == null) return allocated(null, size, 1, start);
+            slab = new Slab(region, c);
+            index(slab, slab);
+            link(slab);
+        }
+
+        int slot = Long.numberOfTrailingZeros(~slab.used);
+        slab.used |= 1L << slot;
+        if (slab.used == -1L) unlink(slab);
+
+        Pointer p = pointer(slab.start + slot * SIZE_CLASSES[c]);
+        pointers.put(p, size);
+        return allocated(p, size, 1, start);
+    }
+
+    /**
+     * Releases a number of data cells.
+     * @param p The pointer to release.
+     */
+    @Override
+    public void release(Pointer p) {
+        long point = p.pointsAt();
+        int size = pointers.size(point);
+        if (size < 0) {
+            // Slot 0 of a slab shares its address with the slab, so only recorded requests go to the backing memory
+            size = large.size(point);
+            if (size < 0) {
+                error("Pointer not in memory");
+                return;
+            }
+            large.remove(point);
+            backing.release(p);
+            released(point, size);
+            return;
+        }
+        pointers.pointer(point).releaseHandle();
+        pointers.remove(point);
+        released(point, size);
+
+        Slab slab = slabOf(point);
+        boolean wasFull = slab.used == -1L;
+        slab.used &= ~(1L << ((point - slab.start) / SIZE_CLASSES[slab.sizeClass]));
+
+        if (wasFull) {
+            link(slab);
+        } else if (slab.used == 0 && (partial[slab.sizeClass] != slab || slab.next != null)) {
+            unlink(slab);
+            index(slab, null);
+            backing.release(slab.region);
+        }
+    }
+
+    /**
+     * Turns handles on or off for the allocations that follow, for the slots
+     * as well as for the large requests served by the backing memory.
+     * @param enabled true to give new allocations a handle.
+     */
+    @Override
+    public void useHandles(boolean enabled) {
+        super.useHandles(enabled);
+        backing.useHandles(enabled);
+    }
+
+    /**
+     * Quiets or unquiets the slab allocator and its backing memory.
+     * @param quiet true to stop printing the messages.
+     */
+    @Override
+    public void setQuiet(boolean quiet) {
+        super.setQuiet(quiet);
+        backing.setQuiet(quiet);
+    }
+
+    private Slab slabOf(long point) {
+        int granule = (int) (point >>> GRANULE_SHIFT);
+        Slab slab = slabs[granule];
+        return slab != null && point < slab.end ? slab : slabs[granule + 1];
+    }
+
+    /**
+     * Sets the entries of the granules whose first cell lies in a slab.
+     * @param slab The slab.
+     * @param value The slab when it is created, or null when it is returned.
+     */
+    private void index(Slab slab, Slab value) {
+        int first = (int) ((slab.start + (1 << GRANULE_SHIFT) - 1) >>> GRANULE_SHIFT);
+        int last = (int) ((slab.end - 1) >>> GRANULE_SHIFT);
+        if (last >= slabs.length) {
+            Slab[] grown = new Slab[Math.max(last + 1, 2 * slabs.length)];
+            System.arraycopy(slabs, 0, grown, 0, slabs.length);
+            slabs = grown;
+        }
+        for (int granule = first; granule <= last; granule++) {
+            slabs[granule] = value;
+        }
+    }
+
+    private void link(Slab slab) {
+        slab.previous = null;
+        slab.next = partial[slab.sizeClass];
+        if (slab.next != null) slab.next.previous = slab;
+        partial[slab.sizeClass] = slab;
+    }
+
+    private void unlink(Slab slab) {
+        if (slab.previous != null) slab.previous.next = slab.next;
+        else partial[slab.sizeClass] = slab.next;
+        if (slab.next != null) slab.next.previous = slab.previous;
+        slab.previous = null;
+        slab.next = null;
+    }
+
+    /**
+     * The free slots of the slabs count as taken, like in the backing memory.
+     */
+    @Override
+    long freeCells() {
+        return backing.freeCells();
+    }
+
+    @Override
+    long largestFreeExtent() {
+        return backing.largestFreeExtent();
+    }
+
+    @Override
+    int freeExtentCount() {
+        return backing.freeExtentCount();
+    }
+
+    /**
+     * Streams the layout of the backing memory to a sink, where every slab is
+     * one allocation.
+     * @param sink The sink.
+     */
+    @Override
+    public void exportLayout(LayoutSink sink) {
+        backing.exportLayout(sink);
+    }
+
+    /**
+     * Prints the layout of the backing memory, where every slab is one
+     * allocation, followed by the use of the slabs of each size class.
+     */
+    @Override
+    public void printLayout() {
+        backing.printLayout();
+
+        int[] count = new int[SIZE_CLASSES.length];
+        int[] used = new int[SIZE_CLASSES.length];
+        Slab last = null;
+        for (Slab slab : slabs) {
+            // A slab fills a run of entries, so counting it once per run counts it once
+            if (slab == null || slab == last) continue;
+            last = slab;
+            count[slab.sizeClass]++;
+            used[slab.sizeClass] += Long.bitCount(slab.used);
+        }
+        System.out.println("\nSlabs:");
+        for (int c = 0; c < SIZE_CLASSES.length; c++) {
+            if (count[c] > 0) {
+                System.out.println("size " + SIZE_CLASSES[c] + ": " + count[c] + " slabs, " + used[c] + "/" + count[c] * SLOTS + " slots used");
+            }
+        }
+    }
+}
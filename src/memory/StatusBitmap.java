@@ -0,0 +1,83 @@
+package memory;
+
+import memory.MemoryUtil.Status;
+
+/**
+ * The status of every cell in a memory, packed as one bit per cell into long
+ * words. A set bit means the cell is allocated. Ranges are updated a word at a
+ * time, and runs are found with {@link Long#numberOfTrailingZeros(long)}
+ * instead of comparing cells one by one.
+ */
+public class StatusBitmap {
+    private final long[] words;
+    private final long size;
+
+    /**
+     * Initializes a bitmap where every cell is free.
+     * @param size The number of cells.
+     */
+    public StatusBitmap(long size) {
+        this.size = size;
+        words = new long[(int) ((size + 63) >>> 6)];
+    }
+
+    /**
+     * @return The number of cells.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @param cell The address of the cell.
+     * @return The status of the cell.
+     */
+    public Status get(long cell) {
+        return (words[(int) (cell >>> 6)] & (1L << cell)) != 0 ? Status.ALLOCATED : Status.FREE;
+    }
+
+    /**
+     * Sets the status of a range of cells.
+     * @param from The first cell.
+     * @param to The cell after the last one.
+     * @param s The new status.
+     */
+    public void set(long from, long to, Status s) {
+        if (from >= to) return;
+        int first = (int) (from >>> 6), last = (int) ((to - 1) >>> 6);
+        long firstMask = -1L << from, lastMask = -1L >>> -to;
+        boolean allocated = s == Status.ALLOCATED;
+        if (first == last) {
+            setBits(first, firstMask & lastMask, allocated);
+            return;
+        }
+        setBits(first, firstMask, allocated);
+        long fill = allocated ? -1L : 0L;
+        for (int i = first + 1; i < last; i++) {
+            words[i] = fill;
+        }
+        setBits(last, lastMask, allocated);
+    }
+
+    /**
+     * Finds the end of the run of cells that share the status of the provided cell.
+     * @param from The first cell of the run.
+     * @return The first cell after the run, or the size of the memory if the run reaches the end.
+     */
+    public long runEnd(long from) {
+        int i = (int) (from >>> 6);
+        // Invert the words of an allocated run, so the end is always the next set bit
+        long flip = (words[i] & (1L << from)) != 0 ? -1L : 0L;
+        long word = (words[i] ^ flip) & (-1L << from);
+        while (word == 0) {
+            if (++i == words.length) return size;
+            word = words[i] ^ flip;
+        }
+        return Math.min(size, ((long) i << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    private void setBits(int word, long mask, boolean allocated) {
+        if (allocated) words[word] |= mask;
+        else words[word] &= ~mask;
+    }
+}
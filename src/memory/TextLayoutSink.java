@@ -0,0 +1,77 @@
+package memory;
+
+import memory.MemoryUtil.Status;
+
+import java.io.PrintStream;
+
+/**
+ * Prints a layout as text, in the format of {@link Memory#printLayout()}:
+ * <pre>
+ * Memory status:
+ * 0 - 9 = ALLOCATED(10)
+ * 10 - 99 = FREE(90)
+ *
+ * Pointer positions:
+ * pointsAt: 0, size: 10, data: [0, 0, 0, 0, 0, 0, 0, 0, 0, 0]
+ * </pre>
+ * The data of the allocations is read one cell at a time while printing, and
+ * can be left out for large memories.
+ */
+public class TextLayoutSink implements LayoutSink {
+    private final PrintStream out;
+    private final boolean data;
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * Initializes a sink that prints the data of the allocations.
+     * @param out The stream to print to.
+     */
+    public TextLayoutSink(PrintStream out) {
+        this(out, true);
+    }
+
+    /**
+     * Initializes a sink.
+     * @param out The stream to print to.
+     * @param data true if the data of the allocations should be printed.
+     */
+    public TextLayoutSink(PrintStream out, boolean data) {
+        this.out = out;
+        this.data = data;
+    }
+
+    @Override
+    public void startExtents(long capacity) {
+        out.println("\nMemory status:");
+    }
+
+    @Override
+    public void extent(long start, long length, Status status) {
+        out.println(start + " - " + (start + length - 1) + " = " + status + "(" + length + ")");
+    }
+
+    @Override
+    public void startAllocations(int count) {
+        out.println("\nPointer positions:");
+    }
+
+    @Override
+    public void allocation(Pointer pointer, int size) {
+        line.setLength(0);
+        line.append("pointsAt: ").append(pointer.pointsAt()).append(", size: ").append(size);
+        if (data) {
+            line.append(", data: [");
+            for (int i = 0; i < size; i++) {
+                if (i > 0) line.append(", ");
+                line.append(pointer.get(i));
+            }
+            line.append(']');
+        }
+        out.println(line);
+    }
+
+    @Override
+    public void end() {
+        out.flush();
+    }
+}
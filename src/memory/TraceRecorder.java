@@ -0,0 +1,291 @@
+package memory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Wraps a memory and records every allocation, write and release made through
+ * it to a binary trace file, which {@link TraceReplay} can feed into any other
+ * memory. The recorder is itself a memory: it hands out pointers that forward
+ * to the wrapped memory, so existing workloads can be recorded unchanged.
+ * <p>
+ * Every allocation gets an id, and the ids of released allocations are
+ * reused, so ids stay below the largest number of live allocations. A trace starts with a header,
+ * followed by records that each start with a tag byte:
+ * <pre>
+ * ALLOC   id size
+ * WRITE   id index length value...
+ * RELEASE id
+ * </pre>
+ * Ids, sizes, indices and lengths are unsigned variable-length integers,
+ * values are 4-byte integers. Allocations that fail are not recorded, and
+ * neither are reads.
+ */
+public class TraceRecorder extends Memory implements Closeable {
+    static final int MAGIC = 0x54524345;
+    static final int VERSION = 1;
+    static final int ALLOC = 1;
+    static final int WRITE = 2;
+    static final int RELEASE = 3;
+
+    private final Memory memory;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private Pointer[] live = new Pointer[16];
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private int nextId;
+
+    /**
+     * A pointer into the wrapped memory that records the writes made through it.
+     */
+    private class TracePointer extends Pointer {
+        private final Pointer pointer;
+        private final int id;
+
+        private TracePointer(Pointer pointer, int id) {
+            super(pointer.pointsAt(), TraceRecorder.this);
+            this.pointer = pointer;
+            this.id = id;
+        }
+
+        @Override
+        public void pointAt(long address) {
+            pointer.pointAt(address);
+        }
+
+        @Override
+        public long pointsAt() {
+            return pointer.pointsAt();
+        }
+
+        @Override
+        public void write(int[] data) {
+            pointer.write(data);
+            record(id, 0, data, 0, data.length);
+        }
+
+        @Override
+        public int[] read(int length) {
+            return pointer.read(length);
+        }
+
+        @Override
+        public void write(int[] data, int offset, int length) {
+            pointer.write(data, offset, length);
+            record(id, 0, data, offset, length);
+        }
+
+        @Override
+        public void read(int[] buffer, int offset, int length) {
+            pointer.read(buffer, offset, length);
+        }
+
+        @Override
+        public int get(int index) {
+            return pointer.get(index);
+        }
+
+        @Override
+        public void set(int index, int value) {
+            pointer.set(index, value);
+            ensure(20);
+            buffer.put((byte) WRITE);
+            putVarint(id);
+            putVarint(index);
+            putVarint(1);
+            buffer.putInt(value);
+        }
+
+        @Override
+        public Pointer clone() {
+            return new TracePointer(pointer.clone(), id);
+        }
+    }
+
+    /**
+     * Starts recording the use of a memory, replacing the trace file if it exists.
+     * @param memory The memory to record.
+     * @param trace The trace file.
+     * @throws IOException If the file can not be created.
+     */
+    public TraceRecorder(Memory memory, Path trace) throws IOException {
+        super(memory.cells);
+        this.memory = memory;
+        channel = FileChannel.open(trace, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+    }
+
+    /**
+     * Turns handles on or off for the allocations that follow in the wrapped memory.
+     * @param enabled true to give new allocations a handle.
+     */
+    @Override
+    public void useHandles(boolean enabled) {
+        memory.useHandles(enabled);
+    }
+
+    /**
+     * Quiets or unquiets the recorder and the wrapped memory.
+     * @param quiet true to stop printing the messages.
+     */
+    @Override
+    public void setQuiet(boolean quiet) {
+        super.setQuiet(quiet);
+        memory.setQuiet(quiet);
+    }
+
+    /**
+     * Allocates a number of memory cells in the wrapped memory.
+     * @param size the number of cells to allocate.
+     * @return The address of the first cell.
+     */
+    @Override
+    public Pointer alloc(int size) {
+        long start = metrics.start();
+        Pointer p = memory.alloc(size);
+        if (p == null) return allocated(null, size, 0, start);
+
+        int id = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+        if (id == live.length) {
+            Pointer[] grown = new Pointer[2 * live.length];
+            System.arraycopy(live, 0, grown, 0, live.length);
+            live = grown;
+        }
+        live[id] = p;
+        ensure(11);
+        buffer.put((byte) ALLOC);
+        putVarint(id);
+        putVarint(size);
+        return allocated(new TracePointer(p, id), size, 0, start);
+    }
+
+    /**
+     * Releases a number of data cells in the wrapped memory.
+     * @param p The pointer to release.
+     */
+    @Override
+    public void release(Pointer p) {
+        if (!(p instanceof TracePointer) || !isLive((TracePointer) p)) {
+            error("Pointer not in memory");
+            return;
+        }
+        TracePointer traced = (TracePointer) p;
+        memory.release(live[traced.id]);
+        live[traced.id] = null;
+
+        ensure(6);
+        buffer.put((byte) RELEASE);
+        putVarint(traced.id);
+        if (freeCount == freeIds.length) {
+            int[] grown = new int[2 * freeIds.length];
+            System.arraycopy(freeIds, 0, grown, 0, freeCount);
+            freeIds = grown;
+        }
+        freeIds[freeCount++] = traced.id;
+        released(traced.pointsAt(), -1);
+    }
+
+    /**
+     * Checks that a pointer was not released, and that its id has not been
+     * given to a new allocation since.
+     */
+    private boolean isLive(TracePointer p) {
+        Pointer current = live[p.id];
+        return current != null && current.pointsAt() == p.pointsAt();
+    }
+
+    @Override
+    long freeCells() {
+        return memory.freeCells();
+    }
+
+    @Override
+    long largestFreeExtent() {
+        return memory.largestFreeExtent();
+    }
+
+    @Override
+    int freeExtentCount() {
+        return memory.freeExtentCount();
+    }
+
+    /**
+     * Prints the layout of the wrapped memory.
+     */
+    @Override
+    public void printLayout() {
+        memory.printLayout();
+    }
+
+    /**
+     * Streams the layout of the wrapped memory to a sink.
+     * @param sink The sink.
+     */
+    @Override
+    public void exportLayout(LayoutSink sink) {
+        memory.exportLayout(sink);
+    }
+
+    private void record(int id, int index, int[] data, int offset, int length) {
+        ensure(16);
+        buffer.put((byte) WRITE);
+        putVarint(id);
+        putVarint(index);
+        putVarint(length);
+        while (length > 0) {
+            ensure(4);
+            int n = Math.min(length, buffer.remaining() / 4);
+            buffer.asIntBuffer().put(data, offset, n);
+            buffer.position(buffer.position() + 4 * n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    private void putVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Makes room in the buffer for a number of bytes, writing it to the file if needed.
+     */
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    /**
+     * Writes the recorded events to the trace file.
+     * @throws UncheckedIOException If the file can not be written.
+     */
+    public void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the remaining events and closes the trace file. The wrapped
+     * memory stays usable.
+     * @throws IOException If the file can not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
@@ -0,0 +1,138 @@
+package memory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Feeds a trace recorded by {@link TraceRecorder} into a memory. The trace is
+ * streamed through a fixed buffer, so traces far larger than the Java heap
+ * can be replayed, and the same trace can be replayed into different
+ * allocators to compare them.
+ * <p>
+ * An allocation that fails during the replay is counted, and the writes to
+ * it and its release are skipped. Writes that run past the end of the memory
+ * are clipped, like {@link Pointer#write(int[])} does.
+ */
+public class TraceReplay {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+    private final Memory memory;
+    private Pointer[] pointers = new Pointer[16];
+    private int[] data = new int[256];
+    private long events;
+    private long failedAllocations;
+
+    private TraceReplay(FileChannel channel, Memory memory) {
+        this.channel = channel;
+        this.memory = memory;
+        buffer.flip();
+    }
+
+    /**
+     * Replays a trace into a memory.
+     * @param trace The trace file.
+     * @param memory The memory to replay the trace into.
+     * @return The number of allocations that failed.
+     * @throws IOException If the file can not be read, or is not a complete trace.
+     */
+    public static long replay(Path trace, Memory memory) throws IOException {
+        try (FileChannel channel = FileChannel.open(trace, StandardOpenOption.READ)) {
+            TraceReplay replay = new TraceReplay(channel, memory);
+            replay.run(trace);
+            return replay.failedAllocations;
+        }
+    }
+
+    private void run(Path trace) throws IOException {
+        require(5);
+        if (buffer.getInt() != TraceRecorder.MAGIC || buffer.get() != TraceRecorder.VERSION) {
+            throw new IOException("Not a trace: " + trace);
+        }
+
+        while (buffer.hasRemaining() || fill() > 0) {
+            int tag = buffer.get();
+            switch (tag) {
+                case TraceRecorder.ALLOC:
+                    alloc(getVarint(), getVarint());
+                    break;
+                case TraceRecorder.WRITE:
+                    write(getVarint(), getVarint(), getVarint());
+                    break;
+                case TraceRecorder.RELEASE:
+                    release(getVarint());
+                    break;
+                default:
+                    throw new IOException("Unknown event " + tag + " after " + events + " events in " + trace);
+            }
+            events++;
+        }
+    }
+
+    private void alloc(int id, int size) {
+        if (id >= pointers.length) {
+            Pointer[] grown = new Pointer[Math.max(2 * pointers.length, id + 1)];
+            System.arraycopy(pointers, 0, grown, 0, pointers.length);
+            pointers = grown;
+        }
+        pointers[id] = memory.alloc(size);
+        if (pointers[id] == null) failedAllocations++;
+    }
+
+    private void write(int id, int index, int length) throws IOException {
+        if (length > data.length) data = new int[Math.max(2 * data.length, length)];
+        for (int offset = 0; offset < length; ) {
+            require(4);
+            int n = Math.min(length - offset, buffer.remaining() / 4);
+            buffer.asIntBuffer().get(data, offset, n);
+            buffer.position(buffer.position() + 4 * n);
+            offset += n;
+        }
+
+        Pointer p = pointers[id];
+        if (p == null) return;
+        long start = p.pointsAt() + index;
+        int n = (int) Math.min(length, memory.capacity() - start);
+        if (n > 0) memory.write((int) start, data, 0, n);
+    }
+
+    private void release(int id) {
+        Pointer p = pointers[id];
+        pointers[id] = null;
+        if (p != null) memory.release(p);
+    }
+
+    private int getVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            require(1);
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    /**
+     * Makes sure that the buffer holds at least a number of bytes.
+     * @throws EOFException If the trace ends first.
+     */
+    private void require(int bytes) throws IOException {
+        while (buffer.remaining() < bytes) {
+            if (fill() < 0) throw new EOFException("The trace ends in the middle of an event");
+        }
+    }
+
+    /**
+     * Reads more of the trace into the buffer.
+     * @return The number of bytes read, or -1 at the end of the trace.
+     */
+    private int fill() throws IOException {
+        buffer.compact();
+        int n = channel.read(buffer);
+        buffer.flip();
+        return n;
+    }
+}
@@ -0,0 +1,300 @@
+package memory;
+
+import memory.MemoryUtil.Status;
+
+/**
+ * This memory model allocates memory cells based on the two-level segregated
+ * fit (TLSF) method. Free blocks are kept in segregated free lists: the first
+ * level splits sizes by power of two, and the second level splits every power
+ * of two into 16 linear ranges. A bitmap per level tells which lists are
+ * non-empty, so both allocation and release take constant time, and released
+ * blocks are merged with their free neighbours right away.
+ * <p>
+ * A request is served from a list whose every block is large enough, so the
+ * search does not walk a list. Only when there is none does it look for a
+ * large enough block in the list the request falls in, so that a request
+ * close to the size of the largest free block does not fail. The memory is
+ * not compacted.
+ */
+public class TwoLevelSegregatedFit extends Memory {
+    private static final int SL_LOG = 4;
+    private static final int SL_COUNT = 1 << SL_LOG;
+    private static final int FL_COUNT = 32 - SL_LOG;
+
+    private static class Block {
+        private int start;
+        private int size;
+        private boolean free;
+        private Block previous;
+        private Block next;
+        private Block previousFree;
+        private Block nextFree;
+
+        private Block(int start, int size) {
+            this.start = start;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The blocks of the memory, keyed by their start address, in an open
+     * addressing table.
+     */
+    private static class BlockMap {
+        private Block[] blocks = new Block[16];
+        private int count;
+
+        private Block get(int start) {
+            int mask = blocks.length - 1;
+            for (int i = hash(start, mask); blocks[i] != null; i = (i + 1) & mask) {
+                if (blocks[i].start == start) return blocks[i];
+            }
+            return null;
+        }
+
+        private void put(Block b) {
+            if (2 * (count + 1) > blocks.length) {
+                Block[] old = blocks;
+                blocks = new Block[2 * old.length];
+                for (Block o : old) {
+                    if (o != null) insert(o);
+                }
+            }
+            insert(b);
+            count++;
+        }
+
+        private void insert(Block b) {
+            int mask = blocks.length - 1;
+            int i = hash(b.start, mask);
+            while (blocks[i] != null) i = (i + 1) & mask;
+            blocks[i] = b;
+        }
+
+        private void remove(int start) {
+            int mask = blocks.length - 1;
+            int i = hash(start, mask);
+            while (blocks[i].start != start) i = (i + 1) & mask;
+
+            // Shift later entries of the probe sequence back, so lookups never need tombstones
+            for (int j = (i + 1) & mask; blocks[j] != null; j = (j + 1) & mask) {
+                int home = hash(blocks[j].start, mask);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    blocks[i] = blocks[j];
+                    i = j;
+                }
+            }
+            blocks[i] = null;
+            count--;
+        }
+
+        private static int hash(int start, int mask) {
+            int h = start * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+    private final Block[][] heads = new Block[FL_COUNT][SL_COUNT];
+    private final int[] slBitmaps = new int[FL_COUNT];
+    private int flBitmap;
+    private long freeCells;
+    private int freeBlocks;
+    private final BlockMap blocks = new BlockMap();
+    private final AllocationTable pointers = new AllocationTable();
+    private final StatusBitmap memoryStatus;
+
+    /**
+     * Initializes an instance of a TLSF-based memory.
+     * @param size The number of cells.
+     */
+    public TwoLevelSegregatedFit(int size) {
+        this(CellStore.onHeap(Math.max(size, 1)));
+    }
+
+    /**
+     * Initializes an instance of a TLSF-based memory on top of existing cells.
+     * @param cells The cells of the memory, see {@link CellStore}.
+     * @throws IllegalArgumentException If there are more than {@link Integer#MAX_VALUE} cells.
+     */
+    public TwoLevelSegregatedFit(CellStore cells) {
+        super(cells);
+        memoryStatus = new StatusBitmap(intCapacity());
+        Block all = new Block(0, intCapacity());
+        blocks.put(all);
+        insertFree(all);
+    }
+
+    /**
+     * Allocates a number of memory cells.
+     * @param size the number of cells to allocate.
+     * @return The address of the first cell.
+     */
+    @Override
+    public Pointer alloc(int size) {
+        long start = metrics.start();
+        Block b = size < 1 ? null : findFree(size);
+        if (b == null) {
+            error("No free memory");
+            return allocated(null, size, 1, start);
+        }
+        removeFree(b);
+
+        // Split off the cells that are not needed as a new free block
+        if (b.size > size) {
+            Block rest = new Block(b.start + size, b.size - size);
+            rest.previous = b;
+            rest.next = b.next;
+            if (b.next != null) b.next.previous = rest;
+            b.next = rest;
+            b.size = size;
+            blocks.put(rest);
+            insertFree(rest);
+        }
+
+        Pointer p = pointer(b.start);
+        pointers.put(p, size);
+        MemoryUtil.updateMemoryStatus(memoryStatus, b.start, b.start + size, Status.ALLOCATED);
+        return allocated(p, size, 1, start);
+    }
+
+    /**
+     * Releases a number of data cells and merges them with the free blocks next to them.
+     * @param p The pointer to release.
+     */
+    @Override
+    public void release(Pointer p) {
+        long point = p.pointsAt();
+        Block b = pointers.size(point) < 0 ? null : blocks.get((int) point);
+        if (b == null) {
+            error("Pointer not in memory");
+            return;
+        }
+        pointers.pointer(point).releaseHandle();
+        pointers.remove(point);
+        released(point, b.size);
+        MemoryUtil.updateMemoryStatus(memoryStatus, b.start, b.start + b.size, Status.FREE);
+
+        if (b.next != null && b.next.free) {
+            removeFree(b.next);
+            absorbNext(b);
+        }
+        if (b.previous != null && b.previous.free) {
+            b = b.previous;
+            removeFree(b);
+            absorbNext(b);
+        }
+        insertFree(b);
+    }
+
+    /**
+     * Merges the block after the provided one into it.
+     */
+    private void absorbNext(Block b) {
+        Block next = b.next;
+        blocks.remove(next.start);
+        b.size += next.size;
+        b.next = next.next;
+        if (next.next != null) next.next.previous = b;
+    }
+
+    /**
+     * Finds a free block that holds at least the provided number of cells,
+     * rounding the request up to the next second-level range. If no such
+     * range has a block, the list that the request itself falls in is walked.
+     * @return The block, or null if there is none.
+     */
+    private Block findFree(int size) {
+        long rounded = size < SL_COUNT ? size : size + (1L << (log2(size) - SL_LOG)) - 1;
+        if (rounded <= Integer.MAX_VALUE) {
+            int fl = firstLevel((int) rounded), sl = secondLevel((int) rounded, fl);
+            int slMap = slBitmaps[fl] & (-1 << sl);
+            if (slMap == 0) {
+                int flMap = flBitmap & (-1 << (fl + 1));
+                fl = Integer.numberOfTrailingZeros(flMap);
+                slMap = flMap == 0 ? 0 : slBitmaps[fl];
+            }
+            if (slMap != 0) return heads[fl][Integer.numberOfTrailingZeros(slMap)];
+        }
+
+        // The rounded search skips the list of the request itself, which may still hold a large enough block
+        int fl = firstLevel(size), sl = secondLevel(size, fl);
+        for (Block b = heads[fl][sl]; b != null; b = b.nextFree) {
+            if (b.size >= size) return b;
+        }
+        return null;
+    }
+
+    private void insertFree(Block b) {
+        int fl = firstLevel(b.size), sl = secondLevel(b.size, fl);
+        b.free = true;
+        freeCells += b.size;
+        freeBlocks++;
+        b.previousFree = null;
+        b.nextFree = heads[fl][sl];
+        if (b.nextFree != null) b.nextFree.previousFree = b;
+        heads[fl][sl] = b;
+        flBitmap |= 1 << fl;
+        slBitmaps[fl] |= 1 << sl;
+    }
+
+    private void removeFree(Block b) {
+        int fl = firstLevel(b.size), sl = secondLevel(b.size, fl);
+        b.free = false;
+        freeCells -= b.size;
+        freeBlocks--;
+        if (b.previousFree != null) b.previousFree.nextFree = b.nextFree;
+        else heads[fl][sl] = b.nextFree;
+        if (b.nextFree != null) b.nextFree.previousFree = b.previousFree;
+        b.previousFree = null;
+        b.nextFree = null;
+        if (heads[fl][sl] == null) {
+            slBitmaps[fl] &= ~(1 << sl);
+            if (slBitmaps[fl] == 0) flBitmap &= ~(1 << fl);
+        }
+    }
+
+    private static int log2(int size) {
+        return 31 - Integer.numberOfLeadingZeros(size);
+    }
+
+    /**
+     * Sizes below 16 share the first level and are split linearly, every larger
+     * power of two has a level of its own.
+     */
+    private static int firstLevel(int size) {
+        return size < SL_COUNT ? 0 : log2(size) - SL_LOG + 1;
+    }
+
+    private static int secondLevel(int size, int fl) {
+        return fl == 0 ? size : (size >>> (fl - 1)) ^ SL_COUNT;
+    }
+
+    @Override
+    long freeCells() {
+        return freeCells;
+    }
+
+    /**
+     * Only the free list of the largest sizes is walked, the others hold smaller blocks.
+     */
+    @Override
+    long largestFreeExtent() {
+        if (flBitmap == 0) return 0;
+        int fl = log2(flBitmap);
+        int largest = 0;
+        for (Block b = heads[fl][log2(slBitmaps[fl])]; b != null; b = b.nextFree) {
+            largest = Math.max(largest, b.size);
+        }
+        return largest;
+    }
+
+    @Override
+    int freeExtentCount() {
+        return freeBlocks;
+    }
+
+    @Override
+    public void exportLayout(LayoutSink sink) {
+        MemoryUtil.exportLayout(memoryStatus, pointers, sink);
+    }
+}
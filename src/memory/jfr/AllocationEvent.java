@@ -0,0 +1,27 @@
+package memory.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("heapsim.Allocation")
+@Label("Allocation")
+@Category("heapsim")
+@Description("Cells were allocated")
+@Enabled(false)
+class AllocationEvent extends Event {
+    @Label("Memory")
+    String memory;
+
+    @Label("Address")
+    long address;
+
+    @Label("Size")
+    int size;
+
+    @Label("Search Length")
+    int searchLength;
+}
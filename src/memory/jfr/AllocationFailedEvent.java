@@ -0,0 +1,19 @@
+package memory.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("heapsim.AllocationFailed")
+@Label("Allocation Failed")
+@Category("heapsim")
+@Description("An allocation found no free cells")
+class AllocationFailedEvent extends Event {
+    @Label("Memory")
+    String memory;
+
+    @Label("Size")
+    int size;
+}
@@ -0,0 +1,27 @@
+package memory.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("heapsim.BlockMoved")
+@Label("Block Moved")
+@Category("heapsim")
+@Description("A compaction moved an allocation")
+@Enabled(false)
+class BlockMovedEvent extends Event {
+    @Label("Memory")
+    String memory;
+
+    @Label("From")
+    long from;
+
+    @Label("To")
+    long to;
+
+    @Label("Size")
+    int size;
+}
@@ -0,0 +1,30 @@
+package memory.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("heapsim.Compaction")
+@Label("Compaction")
+@Category("heapsim")
+@Description("The memory was compacted")
+class CompactionEvent extends Event {
+    @Label("Memory")
+    String memory;
+
+    @Label("Blocks Relocated")
+    int blocksRelocated;
+
+    @Label("Cells Moved")
+    long cellsMoved;
+
+    @Label("First Free Cell")
+    long firstFree;
+
+    @Label("Compaction Time")
+    @Timespan
+    long compactionTime;
+}
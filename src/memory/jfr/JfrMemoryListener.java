@@ -0,0 +1,96 @@
+package memory.jfr;
+
+import memory.CompactionStats;
+import memory.Memory;
+import memory.MemoryListener;
+
+/**
+ * Turns the events of a memory into JDK Flight Recorder events in the heapsim
+ * category, so that allocators can be profiled with standard JFR tooling.
+ * Failed allocations and compactions are recorded by default. Allocations,
+ * releases, compaction moves and buddy splits and merges happen far more
+ * often, and are only recorded when enabled in the recording settings, for
+ * example with {@code -XX:StartFlightRecording:heapsim.Allocation#enabled=true}.
+ * An event that is not enabled costs a single check.
+ */
+public class JfrMemoryListener implements MemoryListener {
+    @Override
+    public void allocated(Memory memory, long address, int size, int searchLength) {
+        AllocationEvent event = new AllocationEvent();
+        if (event.shouldCommit()) {
+            event.memory = memory.getClass().getSimpleName();
+            event.address = address;
+            event.size = size;
+            event.searchLength = searchLength;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void allocationFailed(Memory memory, int size) {
+        AllocationFailedEvent event = new AllocationFailedEvent();
+        if (event.shouldCommit()) {
+            event.memory = memory.getClass().getSimpleName();
+            event.size = size;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void released(Memory memory, long address, int size) {
+        ReleaseEvent event = new ReleaseEvent();
+        if (event.shouldCommit()) {
+            event.memory = memory.getClass().getSimpleName();
+            event.address = address;
+            event.size = size;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void moved(Memory memory, long from, long to, int size) {
+        BlockMovedEvent event = new BlockMovedEvent();
+        if (event.shouldCommit()) {
+            event.memory = memory.getClass().getSimpleName();
+            event.from = from;
+            event.to = to;
+            event.size = size;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void compacted(Memory memory, CompactionStats stats, long nanos) {
+        CompactionEvent event = new CompactionEvent();
+        if (event.shouldCommit()) {
+            event.memory = memory.getClass().getSimpleName();
+            event.blocksRelocated = stats.getBlocksRelocated();
+            event.cellsMoved = stats.getCellsMoved();
+            event.firstFree = stats.getFirstFree();
+            event.compactionTime = nanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void split(Memory memory, long address, int depth) {
+        SplitEvent event = new SplitEvent();
+        if (event.shouldCommit()) {
+            event.memory = memory.getClass().getSimpleName();
+            event.address = address;
+            event.depth = depth;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void merged(Memory memory, long address, int depth) {
+        MergeEvent event = new MergeEvent();
+        if (event.shouldCommit()) {
+            event.memory = memory.getClass().getSimpleName();
+            event.address = address;
+            event.depth = depth;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package memory.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("heapsim.Merge")
+@Label("Merge")
+@Category("heapsim")
+@Description("A released block was merged with its free neighbours")
+@Enabled(false)
+class MergeEvent extends Event {
+    @Label("Memory")
+    String memory;
+
+    @Label("Address")
+    long address;
+
+    @Label("Depth")
+    int depth;
+}
@@ -0,0 +1,24 @@
+package memory.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("heapsim.Release")
+@Label("Release")
+@Category("heapsim")
+@Description("Cells were released")
+@Enabled(false)
+class ReleaseEvent extends Event {
+    @Label("Memory")
+    String memory;
+
+    @Label("Address")
+    long address;
+
+    @Label("Size")
+    int size;
+}
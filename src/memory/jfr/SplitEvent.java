@@ -0,0 +1,24 @@
+package memory.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("heapsim.Split")
+@Label("Split")
+@Category("heapsim")
+@Description("A free block was split to serve an allocation")
+@Enabled(false)
+class SplitEvent extends Event {
+    @Label("Memory")
+    String memory;
+
+    @Label("Address")
+    long address;
+
+    @Label("Depth")
+    int depth;
+}